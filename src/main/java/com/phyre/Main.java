@@ -1,6 +1,7 @@
 package com.phyre;
 
 import com.phyre.exchange.Bitfinex;
+import com.phyre.exchange.ConsoleRenderer;
 import com.phyre.exchange.Exchange;
 import com.phyre.exchange.Kraken;
 import com.phyre.exchange.OrderBook;
@@ -13,6 +14,7 @@ public class Main {
         List<Exchange> exchangeList = Arrays.asList(new Bitfinex(), new Kraken());
         OrderBook orderBook = new OrderBook(exchangeList);
         List<Thread> threads = orderBook.start();
+        new ConsoleRenderer(orderBook).start();
 
         threads.forEach(t -> { //wait for exchange threads
             try {
@@ -0,0 +1,142 @@
+package com.phyre.exchange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single thread that drains the level delta rings of all exchanges into the {@link OrderBook}.
+ * <p>
+ * Feed threads only write into their ring and go back to the socket. The aggregator applies deltas in batches
+ * and publishes each consolidated book once per drain round in which at least one exchange finished a message
+ * for it. Rings are drained up to their last finished message, so every published book holds whole messages of
+ * every exchange.
+ */
+class Aggregator implements Runnable {
+    static final int DEFAULT_RING_CAPACITY = 16384;
+    private static final int DRAIN_LIMIT = 1024;
+    private static final long MAX_PARK_NANOS = 100_000_000L;
+
+    private final OrderBook orderBook;
+    private final WaitStrategy waitStrategy;
+    private final int ringCapacity;
+    private final List<LevelDeltaRing> rings = new ArrayList<>();
+    private volatile boolean running;
+    private volatile boolean sleeping;
+    private volatile Thread thread;
+    /**
+     * Books with a finished message in the current drain round, flagged and listed so publishing
+     * touches only those
+     */
+    private final boolean[] committed;
+    private final int[] committedBooks;
+    private int committedCount;
+
+    /**
+     * @param bookCount number of consolidated books
+     */
+    Aggregator(OrderBook orderBook, int bookCount, WaitStrategy waitStrategy, int ringCapacity) {
+        this.orderBook = orderBook;
+        this.committed = new boolean[bookCount];
+        this.committedBooks = new int[bookCount];
+        this.waitStrategy = waitStrategy;
+        this.ringCapacity = ringCapacity;
+    }
+
+    /**
+     * Creates the ring of one exchange, must be called before {@link #start()}
+     */
+    LevelDeltaRing newRing() {
+        LevelDeltaRing ring = new LevelDeltaRing(this, waitStrategy, ringCapacity);
+        rings.add(ring);
+        return ring;
+    }
+
+    Thread start() {
+        running = true;
+        Thread aggregatorThread = new Thread(this);
+        aggregatorThread.setName("OrderBookAggregator-" + aggregatorThread.getId());
+        thread = aggregatorThread;
+        aggregatorThread.start();
+        return aggregatorThread;
+    }
+
+    void stop() {
+        running = false;
+        signal();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (drainRound() == 0) {
+                idle();
+            }
+        }
+    }
+
+    /**
+     * Drains finished messages of every ring and publishes the books they changed
+     *
+     * @return number of drained entries
+     */
+    int drainRound() {
+        int drained = 0;
+        for (LevelDeltaRing ring : rings) {
+            drained += ring.drain(DRAIN_LIMIT);
+        }
+        for (int i = 0; i < committedCount; i++) {
+            int book = committedBooks[i];
+            committed[book] = false;
+            orderBook.publish(book);
+        }
+        committedCount = 0;
+        return drained;
+    }
+
+    void level(int book, Side side, long price, long oldAmount, long newAmount) {
+        orderBook.aggregate(book, side, price, oldAmount, newAmount);
+    }
+
+    void commit(int book) {
+        if (!committed[book]) {
+            committed[book] = true;
+            committedBooks[committedCount++] = book;
+        }
+    }
+
+    /**
+     * Wakes the aggregator up if it is parked, called by feed threads
+     */
+    void signal() {
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void idle() {
+        switch (waitStrategy) {
+            case BLOCKING:
+                sleeping = true;
+                if (running && allEmpty()) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                sleeping = false;
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            default:
+                Thread.onSpinWait();
+        }
+    }
+
+    private boolean allEmpty() {
+        for (LevelDeltaRing ring : rings) {
+            if (!ring.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
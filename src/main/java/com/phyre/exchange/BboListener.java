@@ -0,0 +1,10 @@
+package com.phyre.exchange;
+
+/**
+ * Notified when the best bid or best ask of a {@link Book} changes, either in price or in amount.
+ * Prices and amounts are scaled longs, a price of zero means the side is empty.
+ */
+@FunctionalInterface
+public interface BboListener {
+    void onBbo(long bestBid, long bestBidAmount, long bestAsk, long bestAskAmount);
+}
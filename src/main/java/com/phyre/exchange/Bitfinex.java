@@ -1,33 +1,138 @@
 package com.phyre.exchange;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-
-import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Bitfinex books of any number of instruments over one connection.
+ * <p>
+ * Every instrument is its own book channel. The {@code subscribed} event maps the channel id to the symbol,
+ * later messages are routed to their book by channel id only.
+ * <p>
+ * Every book can use its own {@link Precision} and {@link Frequency}, so secondary symbols can run grouped
+ * and throttled while primary ones stay real time.
+ */
 public class Bitfinex extends Exchange {
-    private final Gson gson = new Gson();
+    /**
+     * Adds a checksum message after every book update
+     */
+    public static final int OB_CHECKSUM = 131072;
+    /**
+     * Sends the book updates of one instant as a single array
+     */
+    public static final int BULK_UPDATES = 536870912;
+    /**
+     * Levels per side of the subscribed book, Bitfinex computes its checksums over them.
+     * Books are always kept at this depth.
+     */
+    public static final int BOOK_DEPTH = BitfinexChecksum.LEVELS;
+    /**
+     * Public channels Bitfinex allows on one connection
+     */
+    public static final int MAX_CHANNELS = 25;
+
+    private final BitfinexBookParser parser;
+    private final SymbolTable<ExchangeBook> booksBySymbol;
+    private final LongMap<ExchangeBook> booksByChannel = new LongMap<>();
+    private final BitfinexChecksum[] checksums;
+    private final Precision[] precisions;
+    private final Frequency[] frequencies;
+    /**
+     * Book of the message being parsed
+     */
+    private ExchangeBook messageBook;
+    private volatile long checksumMismatches;
+
+    public Bitfinex() {
+        this(Instrument.BTC_USD);
+    }
+
+    public Bitfinex(Instrument instrument) {
+        this(Collections.singletonList(instrument));
+    }
+
+    public Bitfinex(List<Instrument> instruments) {
+        super(instruments, BOOK_DEPTH);
+        if (instruments.size() > MAX_CHANNELS) {
+            throw new IllegalArgumentException("Bitfinex allows " + MAX_CHANNELS + " channels per connection, "
+                    + instruments.size() + " instruments need more connections");
+        }
+        this.parser = new BitfinexBookParser(this::updateOne);
+        this.booksBySymbol = new SymbolTable<>(instruments.size());
+        this.checksums = new BitfinexChecksum[instruments.size()];
+        this.precisions = new Precision[instruments.size()];
+        this.frequencies = new Frequency[instruments.size()];
+        Arrays.fill(precisions, Precision.P0);
+        Arrays.fill(frequencies, Frequency.F0);
+        for (ExchangeBook book : getBooks()) {
+            booksBySymbol.put(symbolOf(book.getInstrument()), book);
+            checksums[book.getIndex()] = new BitfinexChecksum(book.getInstrument());
+        }
+    }
+
+    /**
+     * Sets how the book of a symbol is subscribed, must be called before {@link #start()}.
+     * A book with a precision other than {@link Precision#P0} is {@link ExchangeBook#isGrouped() grouped}.
+     *
+     * @param symbol normalized symbol, like {@code BTC/USD}
+     * @throws IllegalStateException once the exchange is started
+     */
+    public void setBookMode(String symbol, Precision precision, Frequency frequency) {
+        if (isStarted()) {
+            throw new IllegalStateException("Book mode of " + symbol + " can't change after " + this + " started");
+        }
+        ExchangeBook book = getBook(symbol);
+        precisions[book.getIndex()] = precision;
+        frequencies[book.getIndex()] = frequency;
+        book.setGrouped(precision != Precision.P0);
+    }
+
+    public Precision getPrecision(String symbol) {
+        return precisions[getBook(symbol).getIndex()];
+    }
+
+    public Frequency getFrequency(String symbol) {
+        return frequencies[getBook(symbol).getIndex()];
+    }
+
+    /**
+     * @return Bitfinex trading symbol of the instrument, like {@code tBTCUSD}
+     */
+    public static String symbolOf(Instrument instrument) {
+        String base = instrument.getBase();
+        String quote = instrument.getQuote();
+        return "t" + base + (base.length() > 3 || quote.length() > 3 ? ":" : "") + quote;
+    }
 
     @Override
-    protected void onUpdateMessage(String input) {
+    protected void onUpdateMessage(ByteBuffer message) {
         try {
-            JsonElement element = gson.fromJson(input, JsonElement.class);
-            if (element.isJsonObject()) {
+            long channelId = parser.peekChannelId(message);
+            if (channelId < 0) {
+                if (parser.parse(message) == BitfinexBookParser.SUBSCRIBED) {
+                    onSubscribed(message);
+                }
                 return;
             }
-
-            JsonArray updates = element.getAsJsonArray();
-            if (updates.get(1).isJsonPrimitive() && "hb".equals(updates.get(1).getAsString())) { //skipping heartbeat
+            ExchangeBook book = booksByChannel.get(channelId);
+            if (book == null) {
+                return; // channel dropped after a checksum mismatch, messages still in flight
+            }
+            parser.useInstrument(book.getInstrument());
+            messageBook = book;
+            if (book.isAwaitingSnapshot()) {
+                loadSnapshot(book, message);
                 return;
             }
-            JsonArray values = updates.get(1).getAsJsonArray();
-            if (values.get(0).isJsonArray()) { //is snapshot
-                for (int i = 0; i < values.size(); i++) {
-                    updateOne(values.get(i).getAsJsonArray()); // first element is channel id.
+            beginUpdate(book); // a snapshot or bulk update is applied and published as a whole
+            try {
+                if (parser.parse(message) == BitfinexBookParser.CHECKSUM) {
+                    verifyChecksum(book, parser.getChecksum());
                 }
-            } else {
-                updateOne(values);
+            } finally {
+                commitUpdate(book);
             }
         } catch (Exception e) {
             System.out.println("error while parsing update message: ");
@@ -35,29 +140,96 @@ public class Bitfinex extends Exchange {
         }
     }
 
+    private void onSubscribed(ByteBuffer message) {
+        ExchangeBook book = booksBySymbol.get(message, parser.getSymbolFrom(), parser.getSymbolTo());
+        if (book != null) {
+            booksByChannel.put(parser.getChannelId(), book);
+            book.setAwaitingSnapshot(true);
+        }
+    }
+
+    /**
+     * Loads the first book message of a channel as snapshot, it replaces the book in one step
+     */
+    private void loadSnapshot(ExchangeBook book, ByteBuffer message) {
+        beginSnapshot(book);
+        boolean loaded = false;
+        try {
+            loaded = parser.parse(message) == BitfinexBookParser.SNAPSHOT;
+        } finally {
+            if (loaded) {
+                book.setAwaitingSnapshot(false);
+                commitSnapshot(book);
+            } else {
+                abortSnapshot(book); // heartbeat before the snapshot
+            }
+        }
+    }
+
+    /**
+     * Compares the checksum Bitfinex sent with the local book. On a mismatch the book is cleared and the
+     * channel is subscribed again, updates of the old channel still in flight are dropped.
+     */
+    private void verifyChecksum(ExchangeBook book, int expected) {
+        int actual = checksums[book.getIndex()].compute(book.getBids(), book.getAsks());
+        if (actual == expected) {
+            return;
+        }
+        checksumMismatches++;
+        System.out.println(book + " book checksum mismatch, expected " + expected + " but was " + actual
+                + ", resubscribing");
+        long channelId = parser.getChannelId();
+        booksByChannel.remove(channelId);
+        clearBook(book);
+        send("{ \"event\": \"unsubscribe\", \"chanId\": " + channelId + " }");
+        send(getSubscribeMessage(book));
+    }
+
+    /**
+     * @return number of checksum messages that didn't match the local book
+     */
+    public long getChecksumMismatches() {
+        return checksumMismatches;
+    }
 
-    private void updateOne(JsonArray update) {
-        BigDecimal price = update.get(0).getAsBigDecimal();
-        int count = update.get(1).getAsInt();
-        BigDecimal amount = update.get(2).getAsBigDecimal();
-        if (amount.compareTo(BigDecimal.ZERO) > 0) {
+    private void updateOne(long price, int count, long amount) {
+        if (messageBook.isLoadingSnapshot()) {
             if (count > 0) {
-                updateBids(price, amount.abs());
+                snapshotLevel(messageBook, amount > 0 ? Side.BID : Side.ASK, price, Math.abs(amount));
+            }
+            return;
+        }
+        if (amount > 0) {
+            if (count > 0) {
+                updateBids(messageBook, price, amount);
             } else if (count == 0) {
-                removeBid(price);
+                removeBid(messageBook, price);
             }
-        } else if (amount.compareTo(BigDecimal.ZERO) < 0) {
+        } else if (amount < 0) {
             if (count > 0) {
-                updateAsks(price, amount.abs());
+                updateAsks(messageBook, price, -amount);
             } else if (count == 0) {
-                removeAsk(price);
+                removeAsk(messageBook, price);
             }
         }
     }
 
     @Override
-    protected String getSubscribeMessage() {
-        return "{ \"event\": \"subscribe\", \"channel\": \"book\", \"symbol\": \"tBTCUSD\" }";
+    protected void subscribe() {
+        send(getConfMessage());
+        for (ExchangeBook book : getBooks()) {
+            send(getSubscribeMessage(book));
+        }
+    }
+
+    protected String getConfMessage() {
+        return "{ \"event\": \"conf\", \"flags\": " + (OB_CHECKSUM | BULK_UPDATES) + " }";
+    }
+
+    protected String getSubscribeMessage(ExchangeBook book) {
+        return "{ \"event\": \"subscribe\", \"channel\": \"book\", \"symbol\": \"" + symbolOf(book.getInstrument())
+                + "\", \"prec\": \"" + precisions[book.getIndex()] + "\", \"freq\": \"" + frequencies[book.getIndex()]
+                + "\", \"len\": \"" + BOOK_DEPTH + "\" }";
     }
 
     @Override
@@ -71,5 +243,20 @@ public class Bitfinex extends Exchange {
         return "Bitfinex";
     }
 
+    /**
+     * Price grouping of a book, from P0 with five significant digits down to P4 with one.
+     * Grouped levels carry the total amount of all orders within their price range.
+     */
+    public enum Precision {
+        P0, P1, P2, P3, P4
+    }
+
+    /**
+     * Update frequency of a book, F0 sends every change as it happens, F1 sends batched changes every two seconds
+     */
+    public enum Frequency {
+        F0, F1
+    }
+
 
 }
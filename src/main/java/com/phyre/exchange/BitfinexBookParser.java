@@ -0,0 +1,189 @@
+package com.phyre.exchange;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads Bitfinex v2 book channel messages without building a JSON tree.
+ * <p>
+ * Handles the shapes {@code [chanId, [price, count, amount]]}, {@code [chanId, [[price, count, amount], ...]]},
+ * the {@code [chanId, "hb"]} heartbeat, the {@code [chanId, "cs", checksum]} checksum and the
+ * {@code {"event": "subscribed", "chanId": ..., "symbol": ...}} event that maps a channel to its symbol. Every level is handed
+ * to the {@link LevelHandler} as scaled longs while the message is read, one parser is reused for every message
+ * of a connection. A snapshot and a bulk update have the same shape, only the sequence of messages tells them
+ * apart, so both are reported as {@link #SNAPSHOT}.
+ */
+final class BitfinexBookParser {
+    static final int EVENT = 0;
+    static final int HEARTBEAT = 1;
+    static final int UPDATE = 2;
+    static final int SNAPSHOT = 3;
+    static final int OTHER = 4;
+    static final int CHECKSUM = 5;
+    static final int SUBSCRIBED = 6;
+
+    private static final byte[] HEARTBEAT_LITERAL = "hb".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHECKSUM_LITERAL = "cs".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT_KEY = "event".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUBSCRIBED_LITERAL = "subscribed".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHANNEL_ID_KEY = "chanId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SYMBOL_KEY = "symbol".getBytes(StandardCharsets.US_ASCII);
+
+    private final JsonCursor cursor = new JsonCursor();
+    private int priceScale;
+    private int sizeScale;
+    private final LevelHandler handler;
+    private long channelId;
+    private int checksum;
+    private int symbolFrom;
+    private int symbolTo;
+
+    BitfinexBookParser(LevelHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Sets the scales levels are read with, the caller routes every message to its book before parsing it
+     */
+    void useInstrument(Instrument instrument) {
+        this.priceScale = instrument.getPriceScale();
+        this.sizeScale = instrument.getSizeScale();
+    }
+
+    /**
+     * Reads one message and passes its levels to the handler
+     *
+     * @return kind of the message, one of the constants of this class
+     */
+    int parse(ByteBuffer message) {
+        cursor.reset(message);
+        if (!cursor.consume('[')) {
+            return readEvent();
+        }
+        channelId = cursor.readLong();
+        cursor.expect(',');
+        if (cursor.consumeString(HEARTBEAT_LITERAL)) {
+            return HEARTBEAT;
+        }
+        if (cursor.consumeString(CHECKSUM_LITERAL)) {
+            cursor.expect(',');
+            checksum = cursor.readInt();
+            return CHECKSUM;
+        }
+        if (cursor.peek() != '[') {
+            return OTHER;
+        }
+        cursor.expect('[');
+        if (cursor.consume(']')) {
+            return SNAPSHOT; // empty book
+        }
+        if (cursor.peek() != '[') {
+            readLevel();
+            return UPDATE;
+        }
+        do {
+            cursor.expect('[');
+            readLevel();
+        } while (cursor.hasNext(']'));
+        return SNAPSHOT;
+    }
+
+    /**
+     * Reads the channel id of a channel message without parsing the rest, so it can be routed first
+     *
+     * @return channel id, -1 for event objects
+     */
+    long peekChannelId(ByteBuffer message) {
+        cursor.reset(message);
+        return cursor.consume('[') ? cursor.readLong() : -1;
+    }
+
+    /**
+     * @return channel id of the last parsed message
+     */
+    long getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * @return buffer index of the first byte of the symbol of the last {@link #SUBSCRIBED} event
+     */
+    int getSymbolFrom() {
+        return symbolFrom;
+    }
+
+    /**
+     * @return buffer index after the last byte of the symbol of the last {@link #SUBSCRIBED} event
+     */
+    int getSymbolTo() {
+        return symbolTo;
+    }
+
+    /**
+     * @return signed CRC32 checksum of the last {@link #CHECKSUM} message
+     */
+    int getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Reads an event object, only subscriptions are of interest
+     */
+    private int readEvent() {
+        if (!cursor.consume('{') || cursor.consume('}')) {
+            return EVENT;
+        }
+        boolean subscribed = false;
+        symbolFrom = 0;
+        symbolTo = 0;
+        do {
+            if (cursor.consumeString(EVENT_KEY)) {
+                cursor.expect(':');
+                if (cursor.consumeString(SUBSCRIBED_LITERAL)) {
+                    subscribed = true;
+                } else {
+                    cursor.skipValue();
+                }
+            } else if (cursor.consumeString(CHANNEL_ID_KEY)) {
+                cursor.expect(':');
+                channelId = cursor.readLong();
+            } else if (cursor.consumeString(SYMBOL_KEY)) {
+                cursor.expect(':');
+                cursor.readString();
+                symbolFrom = cursor.stringFrom();
+                symbolTo = cursor.stringTo();
+            } else {
+                cursor.skipValue();
+                cursor.expect(':');
+                cursor.skipValue();
+            }
+        } while (cursor.hasNext('}'));
+        return subscribed ? SUBSCRIBED : EVENT;
+    }
+
+    /**
+     * Reads {@code price, count, amount]}, the opening bracket is already consumed
+     */
+    private void readLevel() {
+        long price = cursor.readDecimal(priceScale);
+        cursor.expect(',');
+        int count = cursor.readInt();
+        cursor.expect(',');
+        long amount = cursor.readDecimal(sizeScale);
+        cursor.expect(']');
+        handler.onLevel(price, count, amount);
+    }
+
+    /**
+     * Receives the levels of a book message
+     */
+    @FunctionalInterface
+    interface LevelHandler {
+        /**
+         * @param price  scaled price
+         * @param count  number of orders at the price, 0 removes the level
+         * @param amount scaled total amount, positive for bids, negative for asks
+         */
+        void onLevel(long price, int count, long amount);
+    }
+}
@@ -0,0 +1,119 @@
+package com.phyre.exchange;
+
+import java.util.zip.CRC32;
+
+/**
+ * Computes the CRC32 checksum of the {@code cs} messages Bitfinex sends when the OB_CHECKSUM flag is set.
+ * <p>
+ * The checksum covers the top {@link #LEVELS} levels of both sides interleaved as
+ * {@code bid0:ask0:bid1:ask1:...}, every level written as {@code price:amount} with ask amounts negative.
+ * Numbers are written the way JavaScript prints them, without trailing zeros and in exponent notation below
+ * {@code 1e-6}. The checksum is the CRC32 read as a signed int. Level text is cached by {@link FormattedLevels}.
+ */
+final class BitfinexChecksum {
+    static final int LEVELS = 25;
+    private static final int MAX_LEVEL_BYTES = 64;
+
+    private final CRC32 crc = new CRC32();
+    private final int priceScale;
+    private final int sizeScale;
+    private final FormattedLevels bids;
+    private final FormattedLevels asks;
+
+    BitfinexChecksum(Instrument instrument) {
+        this.priceScale = instrument.getPriceScale();
+        this.sizeScale = instrument.getSizeScale();
+        this.bids = new FormattedLevels(LEVELS, MAX_LEVEL_BYTES, (price, amount, target) -> format(price, amount, target));
+        this.asks = new FormattedLevels(LEVELS, MAX_LEVEL_BYTES, (price, amount, target) -> format(price, -amount, target));
+    }
+
+    /**
+     * @return signed checksum of the top levels of the two ladders
+     */
+    int compute(PriceLadder bidLadder, PriceLadder askLadder) {
+        crc.reset();
+        bids.refresh(bidLadder);
+        asks.refresh(askLadder);
+        boolean first = true;
+        for (int i = 0; i < LEVELS; i++) {
+            if (i < bids.size()) {
+                first = update(bids, i, first);
+            }
+            if (i < asks.size()) {
+                first = update(asks, i, first);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private boolean update(FormattedLevels levels, int level, boolean first) {
+        if (!first) {
+            crc.update(':');
+        }
+        crc.update(levels.text(level), 0, levels.length(level));
+        return false;
+    }
+
+    private int format(long price, long amount, byte[] target) {
+        int length = appendNumber(target, 0, price, priceScale);
+        target[length++] = ':';
+        return appendNumber(target, length, amount, sizeScale);
+    }
+
+    /**
+     * Writes {@code value * 10^-scale} like JavaScript's {@code Number.prototype.toString()}
+     *
+     * @return offset after the last byte written
+     */
+    static int appendNumber(byte[] target, int offset, long value, int scale) {
+        if (value == 0) {
+            target[offset] = '0';
+            return offset + 1;
+        }
+        if (value < 0) {
+            target[offset++] = '-';
+            value = -value;
+        }
+        int exponent = -scale;
+        while (value % 10 == 0) {
+            value /= 10;
+            exponent++;
+        }
+        int start = offset;
+        int end = FormattedLevels.appendDigits(target, start, value);
+        int digits = end - start;
+        // position of the decimal point relative to the first digit
+        int point = digits + exponent;
+        if (point >= digits && point <= 21) {
+            while (end < start + point) {
+                target[end++] = '0';
+            }
+            return end;
+        }
+        if (point > 0 && point <= 21) {
+            return insertPoint(target, start + point, end);
+        }
+        if (point > -6 && point <= 0) {
+            int shift = 2 - point;
+            System.arraycopy(target, start, target, start + shift, digits);
+            target[start] = '0';
+            target[start + 1] = '.';
+            for (int i = start + 2; i < start + shift; i++) {
+                target[i] = '0';
+            }
+            return end + shift;
+        }
+        if (digits > 1) {
+            end = insertPoint(target, start + 1, end);
+        }
+        target[end++] = 'e';
+        target[end++] = (byte) (point > 0 ? '+' : '-');
+        return FormattedLevels.appendDigits(target, end, Math.abs(point - 1));
+    }
+
+    private static int insertPoint(byte[] target, int at, int end) {
+        System.arraycopy(target, at, target, at + 1, end - at);
+        target[at] = '.';
+        return end + 1;
+    }
+}
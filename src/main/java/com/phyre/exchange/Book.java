@@ -0,0 +1,304 @@
+package com.phyre.exchange;
+
+/**
+ * Bid and ask ladders of one instrument together with a cached top of book.
+ * <p>
+ * With a max depth set, every side keeps only the given number of levels from the touch. Levels pushed out
+ * by better ones are removed and reported to the level listener like any other change.
+ * <p>
+ * Changes made between {@link #beginUpdate()} and {@link #commitUpdate()} refresh the top of book once, at commit.
+ * <p>
+ * The owner publishes an immutable {@link BookSnapshot} after each update, readers on other threads get the
+ * latest one from {@link #getSnapshot()} with a single volatile read.
+ * <p>
+ * Mutations are expected from a single writer thread. The best bid/ask fields are volatile so any thread can
+ * read them in O(1), but a bid and an ask read one after the other may come from different updates.
+ */
+public class Book {
+    private final Instrument instrument;
+    private PriceLadder bids;
+    private PriceLadder asks;
+
+    private volatile long bestBid;
+    private volatile long bestBidAmount;
+    private volatile long bestAsk;
+    private volatile long bestAskAmount;
+    private BboListener onBbo;
+    private LevelListener onLevel;
+    private int maxDepth;
+    private int updateDepth;
+    private boolean bidsChanged;
+    private boolean asksChanged;
+    private volatile BookSnapshot snapshot;
+    private final PriceLadder.LevelConsumer prunedBid = (price, amount) -> pruned(Side.BID, price, amount);
+    private final PriceLadder.LevelConsumer prunedAsk = (price, amount) -> pruned(Side.ASK, price, amount);
+
+    public Book(Instrument instrument) {
+        this.instrument = instrument;
+        this.bids = new PriceLadder(Side.BID, instrument.getTickSize());
+        this.asks = new PriceLadder(Side.ASK, instrument.getTickSize());
+        this.snapshot = BookSnapshot.empty(instrument);
+    }
+
+    /**
+     * Sets the amount at the price, zero removes the level
+     *
+     * @return amount at the price before the change
+     */
+    public long set(Side side, long price, long amount) {
+        PriceLadder ladder = ladder(side);
+        if (maxDepth > 0 && amount != 0 && ladder.size() >= maxDepth
+                && ladder.isBetter(ladder.worstPrice(), price)) {
+            return 0; // would be truncated right away
+        }
+        long oldAmount = ladder.set(price, amount);
+        if (oldAmount == amount) {
+            return oldAmount;
+        }
+        if (side == Side.BID) {
+            bidsChanged = true;
+        } else {
+            asksChanged = true;
+        }
+        if (onLevel != null) {
+            onLevel.onLevel(side, price, oldAmount, amount);
+        }
+        if (maxDepth > 0 && ladder.size() > maxDepth) {
+            truncate(side);
+        }
+        if (updateDepth == 0) {
+            updateBbo();
+        }
+        return oldAmount;
+    }
+
+    /**
+     * Replaces all levels of a side with a ladder built elsewhere in one step. The level listener sees only
+     * the difference between the two ladders, levels the new ladder doesn't hold are reported as removed.
+     *
+     * @return the replaced ladder, no longer used by this book
+     */
+    public PriceLadder replace(Side side, PriceLadder levels) {
+        if (levels.getSide() != side) {
+            throw new IllegalArgumentException("Ladder of side " + levels.getSide() + " can't replace " + side);
+        }
+        PriceLadder old = ladder(side);
+        if (side == Side.BID) {
+            bids = levels;
+            bidsChanged = true;
+        } else {
+            asks = levels;
+            asksChanged = true;
+        }
+        if (onLevel != null) {
+            levels.forEach((price, amount) -> {
+                long oldAmount = old.get(price);
+                if (oldAmount != amount) {
+                    onLevel.onLevel(side, price, oldAmount, amount);
+                }
+            });
+            old.forEach((price, amount) -> {
+                if (levels.get(price) == 0) {
+                    onLevel.onLevel(side, price, amount, 0);
+                }
+            });
+        }
+        if (maxDepth > 0 && levels.size() > maxDepth) {
+            truncate(side);
+        }
+        if (updateDepth == 0) {
+            updateBbo();
+        }
+        return old;
+    }
+
+    /**
+     * Starts a batch of changes, calls may be nested
+     */
+    public void beginUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * Ends a batch of changes, the outermost commit refreshes the top of book
+     */
+    public void commitUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("No update in progress");
+        }
+        if (--updateDepth == 0) {
+            updateBbo();
+        }
+    }
+
+    public boolean isUpdating() {
+        return updateDepth > 0;
+    }
+
+    /**
+     * Publishes a snapshot of up to {@code maxLevels} levels per side if the book changed since the last one.
+     * A side that didn't change is shared with the previous snapshot.
+     *
+     * @return the latest snapshot
+     */
+    public BookSnapshot publishSnapshot(int maxLevels) {
+        BookSnapshot last = snapshot;
+        if (!bidsChanged && !asksChanged) {
+            return last;
+        }
+        BookSnapshot.Levels bidLevels = bidsChanged ? BookSnapshot.Levels.of(bids, maxLevels) : last.getBids();
+        BookSnapshot.Levels askLevels = asksChanged ? BookSnapshot.Levels.of(asks, maxLevels) : last.getAsks();
+        bidsChanged = false;
+        asksChanged = false;
+        snapshot = new BookSnapshot(instrument, last.getSequence() + 1, bidLevels, askLevels);
+        return snapshot;
+    }
+
+    /**
+     * @return latest published snapshot, safe to use from any thread
+     */
+    public BookSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public long get(Side side, long price) {
+        return ladder(side).get(price);
+    }
+
+    public PriceLadder ladder(Side side) {
+        return side == Side.BID ? bids : asks;
+    }
+
+    public PriceLadder getBids() {
+        return bids;
+    }
+
+    public PriceLadder getAsks() {
+        return asks;
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public boolean isEmpty() {
+        return bids.isEmpty() && asks.isEmpty();
+    }
+
+    /**
+     * @return best bid price, 0 if there are no bids
+     */
+    public long getBestBid() {
+        return bestBid;
+    }
+
+    public long getBestBidAmount() {
+        return bestBidAmount;
+    }
+
+    /**
+     * @return best ask price, 0 if there are no asks
+     */
+    public long getBestAsk() {
+        return bestAsk;
+    }
+
+    public long getBestAskAmount() {
+        return bestAskAmount;
+    }
+
+    /**
+     * @return best ask minus best bid, 0 if one of the sides is empty
+     */
+    public long getSpread() {
+        long bid = bestBid;
+        long ask = bestAsk;
+        return bid == 0 || ask == 0 ? 0 : ask - bid;
+    }
+
+    /**
+     * @return mid price rounded down to the price scale, 0 if one of the sides is empty
+     */
+    public long getMid() {
+        long bid = bestBid;
+        long ask = bestAsk;
+        return bid == 0 || ask == 0 ? 0 : bid + (ask - bid) / 2;
+    }
+
+    /**
+     * @return maximum number of levels kept per side, 0 if unlimited
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Limits every side to {@code maxDepth} levels from the touch and prunes levels already beyond it.
+     * 0 removes the limit.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Max depth can't be negative");
+        }
+        this.maxDepth = maxDepth;
+        if (maxDepth > 0) {
+            truncate(Side.BID);
+            truncate(Side.ASK);
+            updateBbo();
+        }
+    }
+
+    public void onBbo(BboListener onBbo) {
+        this.onBbo = onBbo;
+    }
+
+    /**
+     * Registers a listener for every level change of this book, including levels pruned by the max depth
+     */
+    public void onLevel(LevelListener onLevel) {
+        this.onLevel = onLevel;
+    }
+
+    private void truncate(Side side) {
+        if (side == Side.BID) {
+            bidsChanged = true;
+        } else {
+            asksChanged = true;
+        }
+        ladder(side).truncate(maxDepth, side == Side.BID ? prunedBid : prunedAsk);
+    }
+
+    private void pruned(Side side, long price, long amount) {
+        if (onLevel != null) {
+            onLevel.onLevel(side, price, amount, 0);
+        }
+    }
+
+    /**
+     * Refreshes the cached top of book from the ladder cursors and notifies the listener if it moved
+     */
+    private void updateBbo() {
+        long bid = bids.bestPrice();
+        long bidAmount = bids.bestQuantity();
+        long ask = asks.bestPrice();
+        long askAmount = asks.bestQuantity();
+        if (bid == bestBid && bidAmount == bestBidAmount && ask == bestAsk && askAmount == bestAskAmount) {
+            return;
+        }
+        bestBid = bid;
+        bestBidAmount = bidAmount;
+        bestAsk = ask;
+        bestAskAmount = askAmount;
+        if (onBbo != null) {
+            onBbo.onBbo(bid, bidAmount, ask, askAmount);
+        }
+    }
+
+    /**
+     * Receives level changes of a book
+     */
+    @FunctionalInterface
+    public interface LevelListener {
+        void onLevel(Side side, long price, long oldAmount, long newAmount);
+    }
+}
@@ -0,0 +1,116 @@
+package com.phyre.exchange;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable copy of a {@link Book} taken after an update, ordered from the touch outwards.
+ * <p>
+ * Snapshots carry a sequence number that grows with every published snapshot of the same book.
+ * A side that did not change since the previous snapshot is shared with it instead of being copied.
+ */
+public final class BookSnapshot {
+    private final Instrument instrument;
+    private final long sequence;
+    private final Levels bids;
+    private final Levels asks;
+
+    BookSnapshot(Instrument instrument, long sequence, Levels bids, Levels asks) {
+        this.instrument = instrument;
+        this.sequence = sequence;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    static BookSnapshot empty(Instrument instrument) {
+        return new BookSnapshot(instrument, 0, Levels.EMPTY, Levels.EMPTY);
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Levels getBids() {
+        return bids;
+    }
+
+    public Levels getAsks() {
+        return asks;
+    }
+
+    public Levels levels(Side side) {
+        return side == Side.BID ? bids : asks;
+    }
+
+    /**
+     * @return best bid price, 0 if there are no bids
+     */
+    public long getBestBid() {
+        return bids.size() > 0 ? bids.price(0) : 0;
+    }
+
+    /**
+     * @return best ask price, 0 if there are no asks
+     */
+    public long getBestAsk() {
+        return asks.size() > 0 ? asks.price(0) : 0;
+    }
+
+    public BigDecimal priceToDecimal(long price) {
+        return instrument.priceToDecimal(price);
+    }
+
+    public BigDecimal sizeToDecimal(long size) {
+        return instrument.sizeToDecimal(size);
+    }
+
+    @Override
+    public String toString() {
+        return "BookSnapshot{" + instrument + " #" + sequence + ", bids: " + bids.size() + ", asks: " + asks.size() + '}';
+    }
+
+    /**
+     * Levels of one side stored as two parallel arrays
+     */
+    public static final class Levels {
+        static final Levels EMPTY = new Levels(new long[0], new long[0]);
+
+        private final long[] prices;
+        private final long[] amounts;
+
+        private Levels(long[] prices, long[] amounts) {
+            this.prices = prices;
+            this.amounts = amounts;
+        }
+
+        static Levels of(PriceLadder ladder, int maxLevels) {
+            int size = Math.min(ladder.size(), maxLevels);
+            if (size == 0) {
+                return EMPTY;
+            }
+            long[] prices = new long[size];
+            long[] amounts = new long[size];
+            int[] index = new int[1];
+            ladder.forEach(size, (price, amount) -> {
+                prices[index[0]] = price;
+                amounts[index[0]++] = amount;
+            });
+            return new Levels(prices, amounts);
+        }
+
+        public int size() {
+            return prices.length;
+        }
+
+        public long price(int level) {
+            return prices[level];
+        }
+
+        public long amount(int level) {
+            return amounts[level];
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.phyre.exchange;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Prints the top of the consolidated book of one symbol at a fixed frame rate on its own thread.
+ * <p>
+ * Every frame reads the latest {@link BookSnapshot} and is skipped if its sequence didn't move since the last
+ * frame. The frame is built in a reused {@link StringBuilder}, encoded into a reused byte buffer and written with
+ * a single write, so rendering doesn't allocate per level or per frame.
+ */
+public class ConsoleRenderer implements Runnable {
+    public static final int DEFAULT_LEVELS = 10;
+    public static final int DEFAULT_FRAMES_PER_SECOND = 10;
+    private static final String SEPARATOR = "***************************\n";
+
+    private final OrderBook orderBook;
+    private final String symbol;
+    private final int levels;
+    private final long frameNanos;
+    private final OutputStream out;
+    private final StringBuilder frame;
+    private byte[] frameBytes;
+    private long renderedSequence = -1;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Renders the first instrument of the order book
+     */
+    public ConsoleRenderer(OrderBook orderBook) {
+        this(orderBook, orderBook.getInstruments().get(0).getSymbol());
+    }
+
+    public ConsoleRenderer(OrderBook orderBook, String symbol) {
+        this(orderBook, symbol, DEFAULT_LEVELS, DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    public ConsoleRenderer(OrderBook orderBook, String symbol, int levels, int framesPerSecond) {
+        this(orderBook, symbol, levels, framesPerSecond, new FileOutputStream(FileDescriptor.out));
+    }
+
+    /**
+     * @param symbol          normalized symbol of the rendered book
+     * @param levels          number of levels shown per side
+     * @param framesPerSecond maximum number of frames written per second
+     * @param out             stream frames are written to
+     */
+    public ConsoleRenderer(OrderBook orderBook, String symbol, int levels, int framesPerSecond, OutputStream out) {
+        if (levels <= 0 || framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Levels and frames per second must be positive");
+        }
+        orderBook.getSnapshot(symbol); // fails early for unknown symbols
+        this.orderBook = orderBook;
+        this.symbol = symbol;
+        this.levels = levels;
+        this.frameNanos = 1_000_000_000L / framesPerSecond;
+        this.out = out;
+        this.frame = new StringBuilder(256 + levels * 2 * 64);
+        this.frameBytes = new byte[frame.capacity()];
+    }
+
+    public Thread start() {
+        if (thread != null) {
+            throw new IllegalStateException("Renderer already started");
+        }
+        running = true;
+        thread = new Thread(this);
+        thread.setName("ConsoleRenderer-" + thread.getId());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+        while (running) {
+            renderFrame();
+            nextFrame += frameNanos;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            } else {
+                nextFrame = System.nanoTime(); // fell behind, don't try to catch up
+            }
+        }
+    }
+
+    /**
+     * Writes one frame if the book changed since the last frame
+     */
+    void renderFrame() {
+        BookSnapshot snapshot = orderBook.getSnapshot(symbol);
+        if (snapshot.getSequence() == renderedSequence
+                || snapshot.getBids().size() == 0 || snapshot.getAsks().size() == 0) {
+            return;
+        }
+        renderedSequence = snapshot.getSequence();
+        frame.setLength(0);
+        format(snapshot);
+        write();
+    }
+
+    private void format(BookSnapshot snapshot) {
+        Instrument instrument = snapshot.getInstrument();
+        BookSnapshot.Levels asks = snapshot.getAsks();
+        BookSnapshot.Levels bids = snapshot.getBids();
+        frame.append(instrument.getSymbol()).append(" #").append(snapshot.getSequence()).append('\n');
+        frame.append("asks:\n");
+        for (int i = Math.min(levels, asks.size()) - 1; i >= 0; i--) {
+            appendLevel(instrument, asks.price(i), asks.amount(i)).append('\n');
+        }
+        frame.append("bids:\n");
+        for (int i = 0; i < Math.min(levels, bids.size()); i++) {
+            appendLevel(instrument, bids.price(i), bids.amount(i)).append('\n');
+        }
+        frame.append("Best bid:");
+        appendLevel(instrument, bids.price(0), bids.amount(0)).append("\nBest ask:");
+        appendLevel(instrument, asks.price(0), asks.amount(0)).append("\nSpread: ");
+        FixedPoint.append(frame, asks.price(0) - bids.price(0), instrument.getPriceScale()).append('\n');
+        frame.append(SEPARATOR);
+    }
+
+    private StringBuilder appendLevel(Instrument instrument, long price, long amount) {
+        frame.append("  [");
+        FixedPoint.append(frame, price, instrument.getPriceScale()).append(", ");
+        return FixedPoint.append(frame, amount, instrument.getSizeScale()).append(" ]");
+    }
+
+    private void write() {
+        int length = frame.length();
+        if (frameBytes.length < length) {
+            frameBytes = new byte[frame.capacity()];
+        }
+        for (int i = 0; i < length; i++) {
+            frameBytes[i] = (byte) frame.charAt(i);
+        }
+        try {
+            out.write(frameBytes, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("error while rendering order book: ");
+            e.printStackTrace();
+        }
+    }
+}
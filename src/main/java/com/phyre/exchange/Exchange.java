@@ -1,45 +1,90 @@
 package com.phyre.exchange;
 
 
+import com.phyre.websocketClient.EventLoop;
 import com.phyre.websocketClient.WebsocketClient;
 
-import java.math.BigDecimal;
 import java.net.URISyntaxException;
-import java.util.Comparator;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * One WebSocket connection to an exchange carrying the books of all its subscribed instruments.
+ * <p>
+ * Every instrument gets its own {@link ExchangeBook}, subclasses route each inbound message to the book it
+ * belongs to. All books are written by the single feed thread of the connection.
+ */
 public abstract class Exchange {
     private WebsocketClient wsClient;
-    private Runnable onUpdate;
-    private final SortedMap<BigDecimal, BigDecimal> bids;
-    private final SortedMap<BigDecimal, BigDecimal> asks;
+    private final List<Instrument> instruments;
+    private final ExchangeBook[] books;
+    private final Map<String, ExchangeBook> booksBySymbol = new HashMap<>();
+    private final boolean fixedDepth;
+    private int maxDepth;
 
-    private final ReentrantLock bidLock = new ReentrantLock();
-    private final ReentrantLock askLock = new ReentrantLock();
+    protected Exchange(Instrument instrument) {
+        this(Collections.singletonList(instrument));
+    }
 
-    protected Exchange() {
-        bids = new TreeMap<>(bidComparator());
-        asks = new TreeMap<>(askComparator());
+    protected Exchange(List<Instrument> instruments) {
+        this(instruments, 0);
     }
 
+    /**
+     * @param fixedDepth levels per side the exchange sends and computes its checksums over, every book is kept at
+     *                   this depth for good. 0 for an exchange without a depth of its own, its books keep every
+     *                   level unless the {@link OrderBook} limits them.
+     */
+    protected Exchange(List<Instrument> instruments, int fixedDepth) {
+        if (fixedDepth < 0) {
+            throw new IllegalArgumentException("Max depth can't be negative");
+        }
+        if (instruments.isEmpty()) {
+            throw new IllegalArgumentException("At least one instrument is needed");
+        }
+        this.instruments = Collections.unmodifiableList(instruments);
+        this.books = new ExchangeBook[instruments.size()];
+        for (int i = 0; i < books.length; i++) {
+            Instrument instrument = instruments.get(i);
+            books[i] = new ExchangeBook(this, i, instrument);
+            if (booksBySymbol.put(instrument.getSymbol(), books[i]) != null) {
+                throw new IllegalArgumentException("Instrument " + instrument + " is listed twice");
+            }
+            books[i].setMaxDepth(fixedDepth);
+        }
+        this.maxDepth = fixedDepth;
+        this.fixedDepth = fixedDepth > 0;
+    }
 
-    Comparator<BigDecimal> bidComparator() {
-        return (p1, p2) -> p1.compareTo(p2) * (-1);
+    /**
+     * Connects on an event loop of its own
+     *
+     * @return thread the connection runs on
+     */
+    public Thread start() throws URISyntaxException {
+        return connect(new WebsocketClient(getUri()));
     }
 
-    Comparator<BigDecimal> askComparator() {
-        return (p1, p2) -> p1.compareTo(p2) * (-1);
+    /**
+     * Connects on a loop shared with other exchanges, the feed of every exchange still runs on one thread only
+     *
+     * @return thread the connection runs on
+     */
+    public Thread start(EventLoop eventLoop) throws URISyntaxException {
+        return connect(new WebsocketClient(getUri(), eventLoop));
     }
 
-    public Thread start() throws URISyntaxException {
-        this.wsClient = new WebsocketClient(getUri());
+    private Thread connect(WebsocketClient wsClient) {
+        this.wsClient = wsClient;
         wsClient.onOpen((clientHandshake, serverHandshake) -> {
             System.out.println(this + "Connected to websocket server, subscribing to books");
-            wsClient.send(getSubscribeMessage());
+            subscribe();
         });
-        wsClient.onMessage(this::onUpdateMessage);
+        wsClient.onMessageBytes(this::onUpdateMessage);
         wsClient.onError(err -> {
             System.out.println("Error occurred on socket connection: ");
             err.printStackTrace();
@@ -53,66 +98,163 @@ public abstract class Exchange {
             wsClient.close();
     }
 
+    /**
+     * @return true once the exchange connected, settings its books were wired with can't change anymore
+     */
+    protected boolean isStarted() {
+        return wsClient != null;
+    }
+
+
+    /**
+     * Starts applying the levels of one inbound message to a book, see {@link ExchangeBook}
+     */
+    protected void beginUpdate(ExchangeBook book) {
+        book.beginUpdate();
+    }
+
+    /**
+     * Ends a batch started by {@link #beginUpdate(ExchangeBook)}, the outermost commit publishes one update
+     * if any level changed.
+     */
+    protected void commitUpdate(ExchangeBook book) {
+        book.commitUpdate();
+    }
+
+    protected void updateBids(ExchangeBook book, long price, long amount) {
+        book.update(Side.BID, price, amount);
+    }
+
+    protected void updateAsks(ExchangeBook book, long price, long amount) {
+        book.update(Side.ASK, price, amount);
+    }
 
-    protected void updateBids(BigDecimal price, BigDecimal amount) {
-        this.bidLock.lock();
-        bids.put(price, amount);
-        this.bidLock.unlock();
-        publishUpdate();
+    protected void removeBid(ExchangeBook book, long price) {
+        book.update(Side.BID, price, 0);
     }
 
-    protected void updateAsks(BigDecimal price, BigDecimal amount) {
-        this.askLock.lock();
-        asks.put(price, amount);
-        this.askLock.unlock();
-        publishUpdate();
+    protected void removeAsk(ExchangeBook book, long price) {
+        book.update(Side.ASK, price, 0);
     }
 
-    protected void removeBid(BigDecimal price) {
-        this.bidLock.lock();
-        bids.remove(price);
-        this.bidLock.unlock();
-        publishUpdate();
+    /**
+     * Starts receiving a snapshot of a book. Its levels are collected next to the live book with
+     * {@link #snapshotLevel(ExchangeBook, Side, long, long)} and replace it in one step at
+     * {@link #commitSnapshot(ExchangeBook)}, so readers never see a half loaded book.
+     */
+    protected void beginSnapshot(ExchangeBook book) {
+        book.beginSnapshot();
     }
 
-    protected void removeAsk(BigDecimal price) {
-        this.askLock.lock();
-        asks.remove(price);
-        this.askLock.unlock();
-        publishUpdate();
+    protected void snapshotLevel(ExchangeBook book, Side side, long price, long amount) {
+        book.snapshotLevel(side, price, amount);
     }
 
-    public ReentrantLock getBidReadLock() {
-        return bidLock;
+    protected void commitSnapshot(ExchangeBook book) {
+        book.commitSnapshot();
     }
 
-    public ReentrantLock getAskReadLock() {
-        return askLock;
+    protected void abortSnapshot(ExchangeBook book) {
+        book.abortSnapshot();
     }
 
-    public SortedMap<BigDecimal, BigDecimal> getBids() {
-        return bids;
+    /**
+     * Removes every level of the book, listeners see each removal like any other update
+     */
+    protected void clearBook(ExchangeBook book) {
+        book.clear();
     }
 
-    public SortedMap<BigDecimal, BigDecimal> getAsks() {
-        return asks;
+    /**
+     * Sends a text message on the open connection
+     */
+    protected void send(String message) {
+        wsClient.send(message);
     }
 
-    private void publishUpdate() {
-        if (this.onUpdate != null) {
-            this.onUpdate.run();
+    public List<Instrument> getInstruments() {
+        return instruments;
+    }
+
+    /**
+     * @return books of all instruments, in the order of {@link #getInstruments()}
+     */
+    public List<ExchangeBook> getBooks() {
+        return Collections.unmodifiableList(Arrays.asList(books));
+    }
+
+    /**
+     * @param index position of the instrument in {@link #getInstruments()}
+     */
+    public ExchangeBook getBook(int index) {
+        return books[index];
+    }
+
+    /**
+     * @param symbol normalized symbol, like {@code BTC/USD}
+     */
+    public ExchangeBook getBook(String symbol) {
+        ExchangeBook book = booksBySymbol.get(symbol);
+        if (book == null) {
+            throw new IllegalArgumentException(this + " is not subscribed to " + symbol);
         }
+        return book;
+    }
+
+    /**
+     * @return maximum number of levels kept per side and book, 0 if unlimited
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return true if the exchange keeps its books at a depth of its own, given at construction
+     */
+    public boolean hasFixedDepth() {
+        return fixedDepth;
+    }
 
+    /**
+     * Keeps only {@code maxDepth} levels per side of every book from the touch, levels pushed beyond it are
+     * dropped and reported as removed. 0 keeps every level the exchange sends.
+     *
+     * @throws IllegalStateException if the exchange has a {@link #hasFixedDepth() fixed depth}
+     */
+    void setMaxDepth(int maxDepth) {
+        if (fixedDepth) {
+            throw new IllegalStateException(this + " keeps its books at " + this.maxDepth + " levels");
+        }
+        for (ExchangeBook book : books) {
+            book.setMaxDepth(maxDepth);
+        }
+        this.maxDepth = maxDepth;
     }
 
+    /**
+     * Registers a listener called once after every inbound message that changed a book
+     */
     public void onUpdate(Runnable onUpdate) {
-        this.onUpdate = onUpdate;
+        for (ExchangeBook book : books) {
+            book.onUpdate(onUpdate);
+        }
     }
 
-    protected abstract void onUpdateMessage(String input);
+    public void onLevelUpdate(LevelUpdateListener onLevelUpdate) {
+        for (ExchangeBook book : books) {
+            book.onLevelUpdate(onLevelUpdate);
+        }
+    }
 
+    /**
+     * Handles one text message as its UTF-8 bytes, the buffer is only valid for the duration of the call
+     */
+    protected abstract void onUpdateMessage(ByteBuffer message);
 
-    protected abstract String getSubscribeMessage();
+    /**
+     * Subscribes to the books of all instruments once the connection is open
+     */
+    protected abstract void subscribe();
 
     protected abstract String getUri();
 
@@ -0,0 +1,282 @@
+package com.phyre.exchange;
+
+/**
+ * Book of one instrument on one {@link Exchange}, the exchange owns one per subscribed symbol.
+ * <p>
+ * The feed thread of the exchange is the only writer and the only thread that walks the live ladders. After each
+ * inbound message that changed a level an immutable snapshot is published and the update listener notified
+ * once. Other threads read the book from {@link #getSnapshot()}, so the feed thread never waits for them.
+ */
+public class ExchangeBook {
+    private final Exchange exchange;
+    private final int index;
+    private final Book book;
+    /**
+     * Levels changed since the last published update, touched by the feed thread only
+     */
+    private int changedLevels;
+    /**
+     * Set when the book was dropped and its levels must come from a new snapshot, touched by the feed thread only
+     */
+    private boolean awaitingSnapshot;
+    /**
+     * Set when levels stand for price ranges instead of single prices
+     */
+    private boolean grouped;
+    /**
+     * Levels of a snapshot being received and the ladders it is built into before they replace the live ones,
+     * created with the first snapshot and reused afterwards
+     */
+    private LevelBuffer snapshotBids;
+    private LevelBuffer snapshotAsks;
+    private PriceLadder spareBids;
+    private PriceLadder spareAsks;
+    private boolean loadingSnapshot;
+    private Runnable onUpdate;
+    private LevelUpdateListener onLevelUpdate;
+
+    ExchangeBook(Exchange exchange, int index, Instrument instrument) {
+        this.exchange = exchange;
+        this.index = index;
+        this.book = new Book(instrument);
+        this.book.onLevel(this::publishLevelUpdate);
+    }
+
+    public Exchange getExchange() {
+        return exchange;
+    }
+
+    /**
+     * @return position of the instrument in the symbol list of the exchange
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Instrument getInstrument() {
+        return book.getInstrument();
+    }
+
+    /**
+     * @return true if every level holds the total amount of a price range at the price of its group, like
+     * Bitfinex books with a precision coarser than P0. Such books are only consolidated when no other book
+     * has their symbol.
+     */
+    public boolean isGrouped() {
+        return grouped;
+    }
+
+    void setGrouped(boolean grouped) {
+        this.grouped = grouped;
+    }
+
+    /**
+     * Starts applying the levels of one inbound message, listeners get a single update at
+     * {@link #commitUpdate()}. Calls may be nested.
+     */
+    void beginUpdate() {
+        book.beginUpdate();
+    }
+
+    /**
+     * Ends a batch started by {@link #beginUpdate()}, the outermost commit publishes one update if any
+     * level changed.
+     */
+    void commitUpdate() {
+        book.commitUpdate();
+        if (!book.isUpdating()) {
+            publishUpdate();
+        }
+    }
+
+    boolean isUpdating() {
+        return book.isUpdating();
+    }
+
+    void update(Side side, long price, long amount) {
+        book.set(side, price, amount);
+        if (!book.isUpdating()) {
+            publishUpdate();
+        }
+    }
+
+    /**
+     * Removes every level, listeners see each removal like any other update
+     */
+    void clear() {
+        beginUpdate();
+        try {
+            for (Side side : Side.values()) {
+                PriceLadder ladder = book.ladder(side);
+                while (!ladder.isEmpty()) {
+                    book.set(side, ladder.bestPrice(), 0);
+                }
+            }
+        } finally {
+            commitUpdate();
+        }
+    }
+
+    /**
+     * Starts receiving a snapshot. Its levels are collected next to the live book, which stays unchanged and
+     * readable until {@link #commitSnapshot()} swaps the whole snapshot in.
+     */
+    void beginSnapshot() {
+        if (snapshotBids == null) {
+            snapshotBids = new LevelBuffer(64);
+            snapshotAsks = new LevelBuffer(64);
+            spareBids = new PriceLadder(Side.BID, getInstrument().getTickSize());
+            spareAsks = new PriceLadder(Side.ASK, getInstrument().getTickSize());
+        }
+        snapshotBids.clear();
+        snapshotAsks.clear();
+        loadingSnapshot = true;
+    }
+
+    boolean isLoadingSnapshot() {
+        return loadingSnapshot;
+    }
+
+    void snapshotLevel(Side side, long price, long amount) {
+        if (amount != 0) {
+            (side == Side.BID ? snapshotBids : snapshotAsks).add(price, amount);
+        }
+    }
+
+    /**
+     * Builds the received snapshot into the spare ladders, best level first and only as deep as the book is
+     * kept, then swaps them in at once. Listeners see the difference to the replaced book as
+     * level changes and one update.
+     */
+    void commitSnapshot() {
+        loadingSnapshot = false;
+        fill(spareBids, snapshotBids);
+        fill(spareAsks, snapshotAsks);
+        beginUpdate();
+        try {
+            spareBids = book.replace(Side.BID, spareBids);
+            spareAsks = book.replace(Side.ASK, spareAsks);
+        } finally {
+            commitUpdate();
+        }
+        spareBids.clear();
+        spareAsks.clear();
+    }
+
+    /**
+     * Drops a snapshot that was not received completely, the live book stays as it was
+     */
+    void abortSnapshot() {
+        loadingSnapshot = false;
+    }
+
+    private void fill(PriceLadder ladder, LevelBuffer levels) {
+        levels.sortBestFirst(ladder.getSide());
+        int depth = getMaxDepth() > 0 ? getMaxDepth() : Integer.MAX_VALUE;
+        for (int i = 0; i < levels.size() && ladder.size() < depth; i++) {
+            ladder.set(levels.price(i), levels.amount(i));
+        }
+    }
+
+    boolean isAwaitingSnapshot() {
+        return awaitingSnapshot;
+    }
+
+    void setAwaitingSnapshot(boolean awaitingSnapshot) {
+        this.awaitingSnapshot = awaitingSnapshot;
+    }
+
+    /**
+     * @return live bid ladder, walk it from the feed thread only
+     */
+    public PriceLadder getBids() {
+        return book.getBids();
+    }
+
+    /**
+     * @return live ask ladder, walk it from the feed thread only
+     */
+    public PriceLadder getAsks() {
+        return book.getAsks();
+    }
+
+    public int getMaxDepth() {
+        return book.getMaxDepth();
+    }
+
+    void setMaxDepth(int maxDepth) {
+        book.setMaxDepth(maxDepth);
+    }
+
+    /**
+     * @return latest immutable snapshot of this book, safe to use from any thread
+     */
+    public BookSnapshot getSnapshot() {
+        return book.getSnapshot();
+    }
+
+    public long getBestBid() {
+        return book.getBestBid();
+    }
+
+    public long getBestBidAmount() {
+        return book.getBestBidAmount();
+    }
+
+    public long getBestAsk() {
+        return book.getBestAsk();
+    }
+
+    public long getBestAskAmount() {
+        return book.getBestAskAmount();
+    }
+
+    public long getSpread() {
+        return book.getSpread();
+    }
+
+    public long getMid() {
+        return book.getMid();
+    }
+
+    public void onBbo(BboListener onBbo) {
+        book.onBbo(onBbo);
+    }
+
+    /**
+     * Registers a listener called once after every inbound message that changed this book
+     */
+    public void onUpdate(Runnable onUpdate) {
+        this.onUpdate = onUpdate;
+    }
+
+    public void onLevelUpdate(LevelUpdateListener onLevelUpdate) {
+        this.onLevelUpdate = onLevelUpdate;
+    }
+
+    private void publishLevelUpdate(Side side, long price, long oldAmount, long newAmount) {
+        changedLevels++;
+        if (this.onLevelUpdate != null) {
+            this.onLevelUpdate.onLevelUpdate(exchange, book.getInstrument(), side, price, oldAmount, newAmount);
+        }
+    }
+
+    /**
+     * Publishes a new snapshot and notifies the update listener if any level changed since the last update
+     */
+    private void publishUpdate() {
+        if (changedLevels == 0) {
+            return;
+        }
+        changedLevels = 0;
+        book.publishSnapshot(getMaxDepth() > 0 ? getMaxDepth() : Integer.MAX_VALUE);
+        if (this.onUpdate != null) {
+            this.onUpdate.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return exchange + " " + book.getInstrument();
+    }
+}
@@ -0,0 +1,197 @@
+package com.phyre.exchange;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion of decimal text into scaled longs without going through {@link BigDecimal}
+ * <p>
+ * Numbers are read as a long significand and a decimal exponent, the exponent of the text and the scale
+ * are applied with a single multiplication or division by a power of ten.
+ * <p>
+ * Digits beyond the scale are rounded half to even, like {@link RoundingMode#HALF_EVEN}, so a value with more
+ * decimals than the instrument keeps, like a Bitfinex amount of {@code 1.234e-9}, still gives a level.
+ */
+public final class FixedPoint {
+    public static final int MAX_SCALE = 18;
+    /**
+     * Larger exponents can't give a long with any scale, they are left to {@link BigDecimal}
+     */
+    private static final int MAX_EXPONENT = 1000;
+    /**
+     * Marks a result that doesn't fit into a long, no valid magnitude equals it
+     */
+    private static final long OVERFLOW = -1;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    public static long pow10(int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+
+    /**
+     * Parses a decimal number like {@code -43251.10000} into {@code value * 10^scale}, rounded half to even.
+     *
+     * @throws NumberFormatException if the text is not a number or does not fit into a long
+     */
+    public static long parse(CharSequence text, int scale) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return parse(ByteBuffer.wrap(bytes), 0, bytes.length, scale);
+    }
+
+    /**
+     * Parses the ASCII decimal number in {@code [from, to)} of the buffer into {@code value * 10^scale}.
+     * Plain decimals and exponent notation like {@code 1e-8} or {@code 4.3251E4} are parsed in place.
+     * Digits beyond the scale are rounded half to even. Only when the digits overflow a long on the way, the
+     * number is parsed again through {@link BigDecimal}, with the same rounding. The buffer position is not used
+     * or changed.
+     *
+     * @throws NumberFormatException if the bytes are not a number or don't fit into a long
+     */
+    public static long parse(ByteBuffer buffer, int from, int to, int scale) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long significand = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < to; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                if (significand > (Long.MAX_VALUE - (c - '0')) / 10) {
+                    return parseExact(ascii(buffer, from, to), scale);
+                }
+                significand = significand * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not a number: " + ascii(buffer, from, to));
+        }
+        int exponent = 0;
+        if (i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            for (; i < to && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++) {
+                if (exponent > MAX_EXPONENT) {
+                    return parseExact(ascii(buffer, from, to), scale);
+                }
+                exponent = exponent * 10 + (buffer.get(i) - '0');
+            }
+            if (i == exponentStart) {
+                throw new NumberFormatException("Missing exponent: " + ascii(buffer, from, to));
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != to) {
+            throw new NumberFormatException("Not a number: " + ascii(buffer, from, to));
+        }
+        long value = scale(significand, scale - Math.max(fractionDigits, 0) + exponent);
+        if (value == OVERFLOW) {
+            return parseExact(ascii(buffer, from, to), scale);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return {@code significand * 10^power} rounded half to even, {@link #OVERFLOW} if that doesn't fit into
+     * a long or the power is beyond the table
+     */
+    private static long scale(long significand, int power) {
+        if (significand == 0) {
+            return 0;
+        }
+        if (power >= 0) {
+            if (power > MAX_SCALE || significand > Long.MAX_VALUE / POWERS_OF_TEN[power]) {
+                return OVERFLOW;
+            }
+            return significand * POWERS_OF_TEN[power];
+        }
+        if (-power > MAX_SCALE) {
+            return OVERFLOW;
+        }
+        long divisor = POWERS_OF_TEN[-power];
+        long quotient = significand / divisor;
+        long remainder = significand % divisor;
+        long half = divisor / 2;
+        if (remainder > half || (remainder == half && (quotient & 1) == 1)) {
+            quotient++;
+        }
+        return quotient;
+    }
+
+    /**
+     * Parses the ASCII integer in {@code [from, to)} of the buffer
+     */
+    public static long parseLong(ByteBuffer buffer, int from, int to) {
+        return parse(buffer, from, to, 0);
+    }
+
+    private static String ascii(ByteBuffer buffer, int from, int to) {
+        StringBuilder text = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            text.append((char) buffer.get(i));
+        }
+        return text.toString();
+    }
+
+    private static long parseExact(String text, int scale) {
+        try {
+            return new BigDecimal(text).setScale(scale, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Number doesn't fit scale " + scale + ": " + text);
+        }
+    }
+
+    /**
+     * Appends {@code value / 10^scale} as a plain decimal with exactly {@code scale} fraction digits,
+     * without creating intermediate objects
+     */
+    public static StringBuilder append(StringBuilder target, long value, int scale) {
+        if (scale == 0) {
+            return target.append(value);
+        }
+        long unit = POWERS_OF_TEN[scale];
+        long integer = value / unit;
+        long fraction = Math.abs(value % unit);
+        if (value < 0 && integer == 0) {
+            target.append('-');
+        }
+        target.append(integer).append('.');
+        for (long digit = unit / 10; digit > fraction && digit > 1; digit /= 10) {
+            target.append('0');
+        }
+        return target.append(fraction);
+    }
+}
@@ -0,0 +1,143 @@
+package com.phyre.exchange;
+
+/**
+ * Top levels of one ladder together with their text as the exchange writes it into book checksums.
+ * <p>
+ * The text of every level is cached by price and only formatted again when the amount at that price changed.
+ * A level inserted or removed near the touch shifts the levels below it, their cached text moves along with
+ * them, so refreshing after an update formats only the changed levels and doesn't allocate.
+ * Not thread safe, used by the feed thread only.
+ */
+final class FormattedLevels implements PriceLadder.LevelConsumer {
+    private final LevelFormatter formatter;
+    private long[] prices;
+    private long[] amounts;
+    private byte[][] text;
+    private int[] lengths;
+    private int size;
+    /**
+     * Levels of the previous refresh, the cache the current refresh takes its text from
+     */
+    private long[] previousPrices;
+    private long[] previousAmounts;
+    private byte[][] previousText;
+    private int[] previousLengths;
+    private int previousSize;
+    private int previous;
+    private int position;
+    private PriceLadder ladder;
+
+    /**
+     * @param levels        number of levels kept from the touch
+     * @param maxLevelBytes maximum length of the text of one level
+     */
+    FormattedLevels(int levels, int maxLevelBytes, LevelFormatter formatter) {
+        this.formatter = formatter;
+        this.prices = new long[levels];
+        this.amounts = new long[levels];
+        this.text = new byte[levels][maxLevelBytes];
+        this.lengths = new int[levels];
+        this.previousPrices = new long[levels];
+        this.previousAmounts = new long[levels];
+        this.previousText = new byte[levels][maxLevelBytes];
+        this.previousLengths = new int[levels];
+    }
+
+    /**
+     * Takes the current top levels of the ladder, formatting only the ones that changed
+     */
+    void refresh(PriceLadder ladder) {
+        swapWithPrevious();
+        this.ladder = ladder;
+        previous = 0;
+        position = 0;
+        ladder.forEach(prices.length, this);
+        size = position;
+        this.ladder = null;
+    }
+
+    /**
+     * Drops the cached text, the next refresh formats every level again
+     */
+    void invalidate() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] text(int level) {
+        return text[level];
+    }
+
+    int length(int level) {
+        return lengths[level];
+    }
+
+    /**
+     * Takes the next level from the touch. Both the ladder and the previous levels are walked from the touch,
+     * so the previous level at the same price, if any, is found by skipping the better ones.
+     */
+    @Override
+    public void accept(long price, long amount) {
+        int i = position++;
+        prices[i] = price;
+        amounts[i] = amount;
+        while (previous < previousSize && ladder.isBetter(previousPrices[previous], price)) {
+            previous++;
+        }
+        if (previous < previousSize && previousPrices[previous] == price && previousAmounts[previous] == amount) {
+            byte[] cached = previousText[previous];
+            previousText[previous] = text[i];
+            text[i] = cached;
+            lengths[i] = previousLengths[previous++];
+            return;
+        }
+        lengths[i] = formatter.format(price, amount, text[i]);
+    }
+
+    private void swapWithPrevious() {
+        long[] swappedPrices = previousPrices;
+        previousPrices = prices;
+        prices = swappedPrices;
+        long[] swappedAmounts = previousAmounts;
+        previousAmounts = amounts;
+        amounts = swappedAmounts;
+        byte[][] swappedText = previousText;
+        previousText = text;
+        text = swappedText;
+        int[] swappedLengths = previousLengths;
+        previousLengths = lengths;
+        lengths = swappedLengths;
+        previousSize = size;
+    }
+
+    /**
+     * Writes the digits of a positive value
+     *
+     * @return offset after the last digit
+     */
+    static int appendDigits(byte[] target, int offset, long value) {
+        int end = offset;
+        for (long rest = value; rest > 0; rest /= 10) {
+            end++;
+        }
+        for (int i = end - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Writes the text of one level
+     */
+    @FunctionalInterface
+    interface LevelFormatter {
+        /**
+         * @return number of bytes written from the start of {@code target}
+         */
+        int format(long price, long amount, byte[] target);
+    }
+}
@@ -0,0 +1,108 @@
+package com.phyre.exchange;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Describes how prices and sizes of a traded pair are represented as fixed-point longs.
+ * A price {@code p} is stored as {@code p * 10^priceScale}, a size {@code s} as {@code s * 10^sizeScale}.
+ * The tick size is the price increment in scaled units, it defines the grid of {@link PriceLadder} slots.
+ * <p>
+ * The symbol is the normalized {@code BASE/QUOTE} name, exchanges map it to their own pair names.
+ */
+public class Instrument {
+    public static final Instrument BTC_USD = new Instrument("BTC/USD", 5, 8, 10000);
+
+    private final String symbol;
+    private final String base;
+    private final String quote;
+    private final int priceScale;
+    private final int sizeScale;
+    private final long tickSize;
+
+    public Instrument(String symbol, int priceScale, int sizeScale) {
+        this(symbol, priceScale, sizeScale, 1);
+    }
+
+    public Instrument(String symbol, int priceScale, int sizeScale, long tickSize) {
+        if (tickSize <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        if (priceScale < 0 || priceScale > FixedPoint.MAX_SCALE || sizeScale < 0 || sizeScale > FixedPoint.MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be between 0 and " + FixedPoint.MAX_SCALE);
+        }
+        int slash = symbol.indexOf('/');
+        if (slash <= 0 || slash == symbol.length() - 1) {
+            throw new IllegalArgumentException("Symbol must be BASE/QUOTE but was " + symbol);
+        }
+        this.symbol = symbol;
+        this.base = symbol.substring(0, slash);
+        this.quote = symbol.substring(slash + 1);
+        this.priceScale = priceScale;
+        this.sizeScale = sizeScale;
+        this.tickSize = tickSize;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getBase() {
+        return base;
+    }
+
+    public String getQuote() {
+        return quote;
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public int getSizeScale() {
+        return sizeScale;
+    }
+
+    public long getTickSize() {
+        return tickSize;
+    }
+
+    public long parsePrice(CharSequence price) {
+        return FixedPoint.parse(price, priceScale);
+    }
+
+    public long parseSize(CharSequence size) {
+        return FixedPoint.parse(size, sizeScale);
+    }
+
+    public BigDecimal priceToDecimal(long price) {
+        return BigDecimal.valueOf(price, priceScale);
+    }
+
+    public BigDecimal sizeToDecimal(long size) {
+        return BigDecimal.valueOf(size, sizeScale);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Instrument that = (Instrument) o;
+        return priceScale == that.priceScale && sizeScale == that.sizeScale && tickSize == that.tickSize
+                && symbol.equals(that.symbol);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(symbol, priceScale, sizeScale, tickSize);
+    }
+
+    @Override
+    public String toString() {
+        return symbol;
+    }
+}
@@ -0,0 +1,237 @@
+package com.phyre.exchange;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward only pull reader over the JSON bytes of one message.
+ * <p>
+ * It reads numbers straight into scaled longs and compares strings in place, so walking a message doesn't
+ * create any objects. It is meant to be reused for every message of a connection, it only understands as much
+ * JSON as the exchange book messages need and fails with {@link IllegalArgumentException} on anything else.
+ */
+final class JsonCursor {
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+    private int stringFrom;
+    private int stringTo;
+    private int numberFrom;
+    private int numberTo;
+
+    /**
+     * Starts reading the remaining bytes of the buffer, the buffer position is not changed
+     */
+    JsonCursor reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+        return this;
+    }
+
+    /**
+     * @return next non whitespace byte without consuming it, 0 at the end of the message
+     */
+    byte peek() {
+        skipWhitespace();
+        return position < limit ? buffer.get(position) : 0;
+    }
+
+    /**
+     * Consumes the next non whitespace byte if it is {@code c}
+     */
+    boolean consume(char c) {
+        if (peek() == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    void expect(char c) {
+        if (!consume(c)) {
+            throw unexpected("'" + c + "'");
+        }
+    }
+
+    /**
+     * Consumes a separating comma if there is one, otherwise the closing bracket {@code close}
+     *
+     * @return true if another element follows
+     */
+    boolean hasNext(char close) {
+        if (consume(',')) {
+            return true;
+        }
+        expect(close);
+        return false;
+    }
+
+    /**
+     * Reads a number, or a string holding a number, as {@code value * 10^scale}
+     */
+    long readDecimal(int scale) {
+        boolean quoted = consume('"');
+        int start = position;
+        int end = start;
+        while (end < limit && isNumberByte(buffer.get(end))) {
+            end++;
+        }
+        if (end == start) {
+            throw unexpected("number");
+        }
+        long value = FixedPoint.parse(buffer, start, end, scale);
+        numberFrom = start;
+        numberTo = end;
+        position = end;
+        if (quoted) {
+            expect('"');
+        }
+        return value;
+    }
+
+    long readLong() {
+        return readDecimal(0);
+    }
+
+    int readInt() {
+        return Math.toIntExact(readLong());
+    }
+
+    /**
+     * @return number of digits written after the decimal point of the last number read by
+     * {@link #readDecimal(int)}, trailing zeros included
+     */
+    int fractionDigits() {
+        for (int i = numberFrom; i < numberTo; i++) {
+            if (buffer.get(i) == '.') {
+                int end = i + 1;
+                while (end < numberTo && buffer.get(end) >= '0' && buffer.get(end) <= '9') {
+                    end++;
+                }
+                return end - i - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Consumes the string {@code literal} if it is the next value
+     */
+    boolean consumeString(byte[] literal) {
+        if (peek() != '"' || position + literal.length + 1 >= limit) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (buffer.get(position + 1 + i) != literal[i]) {
+                return false;
+            }
+        }
+        if (buffer.get(position + 1 + literal.length) != '"') {
+            return false;
+        }
+        position += literal.length + 2;
+        return true;
+    }
+
+    /**
+     * Reads a string without escapes, its content is then at {@link #stringFrom()} to {@link #stringTo()}
+     */
+    void readString() {
+        expect('"');
+        stringFrom = position;
+        while (position < limit && buffer.get(position) != '"') {
+            if (buffer.get(position) == '\\') {
+                throw unexpected("string without escapes");
+            }
+            position++;
+        }
+        stringTo = position;
+        expect('"');
+    }
+
+    /**
+     * @return buffer index of the first byte of the last string read by {@link #readString()}
+     */
+    int stringFrom() {
+        return stringFrom;
+    }
+
+    /**
+     * @return buffer index after the last byte of the last string read by {@link #readString()}
+     */
+    int stringTo() {
+        return stringTo;
+    }
+
+    /**
+     * Skips the next value of any type, including nested arrays and objects
+     */
+    void skipValue() {
+        byte first = peek();
+        if (first == '"') {
+            skipString();
+        } else if (first == '[' || first == '{') {
+            int depth = 0;
+            do {
+                byte c = buffer.get(position);
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    depth--;
+                }
+                position++;
+            } while (depth > 0 && position < limit);
+            if (depth > 0) {
+                throw unexpected("end of " + (char) first);
+            }
+        } else {
+            int start = position;
+            while (position < limit && isLiteralByte(buffer.get(position))) {
+                position++;
+            }
+            if (position == start) {
+                throw unexpected("value");
+            }
+        }
+    }
+
+    private void skipString() {
+        position++; // opening quote
+        while (position < limit) {
+            byte c = buffer.get(position++);
+            if (c == '\\') {
+                position++;
+            } else if (c == '"') {
+                return;
+            }
+        }
+        throw unexpected("end of string");
+    }
+
+    private void skipWhitespace() {
+        while (position < limit) {
+            byte c = buffer.get(position);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private static boolean isNumberByte(byte c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private static boolean isLiteralByte(byte c) {
+        return isNumberByte(c) || (c >= 'a' && c <= 'z');
+    }
+
+    private IllegalArgumentException unexpected(String expected) {
+        return new IllegalArgumentException("Expected " + expected + " at offset " + position
+                + (position < limit ? " but found '" + (char) buffer.get(position) + "'" : " but message ended"));
+    }
+}
@@ -1,87 +1,289 @@
 package com.phyre.exchange;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-
-import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Kraken books of any number of instruments over one connection.
+ * <p>
+ * All pairs are subscribed with one message, every book message ends with its pair name and is routed to its
+ * book by that name before its levels are read.
+ * <p>
+ * Kraken writes prices and volumes of every pair with a fixed number of decimals and computes its checksums
+ * over exactly those digits. The decimals of each pair are read from its snapshot. An instrument whose scales
+ * are smaller can't hold the levels exactly, its book is dropped and the pair unsubscribed.
+ */
 public class Kraken extends Exchange {
-    private final Gson gson = new Gson();
+    /**
+     * Depth Kraken subscribes to when none is given
+     */
+    public static final int DEFAULT_DEPTH = 10;
+    /**
+     * Checksum mismatches in a row after which a book is dropped instead of resubscribed
+     */
+    public static final int MAX_RESYNCS = 5;
+    private static final int[] DEPTHS = {10, 25, 100, 500, 1000};
+
+    private final int depth;
+    private final KrakenBookParser parser;
+    private final SymbolTable<ExchangeBook> booksByPair;
+    private final KrakenChecksum[] checksums;
+    /**
+     * Resubscriptions since the last matching checksum, per book
+     */
+    private final int[] resyncs;
+    /**
+     * Books given up on, their pairs are unsubscribed
+     */
+    private final boolean[] dropped;
+    /**
+     * Book of the message being parsed
+     */
+    private ExchangeBook messageBook;
+    private long lastLevelTimestamp;
+    private volatile long checksumMismatches;
+
+    public Kraken() {
+        this(Instrument.BTC_USD);
+    }
 
+    public Kraken(Instrument instrument) {
+        this(Collections.singletonList(instrument));
+    }
+
+    public Kraken(Instrument instrument, int depth) {
+        this(Collections.singletonList(instrument), depth);
+    }
+
+    public Kraken(List<Instrument> instruments) {
+        this(instruments, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Pairs may be written by Kraken with different decimals, every book is checked against the decimals of its
+     * own pair when its snapshot arrives.
+     *
+     * @param depth levels per side of the subscribed books, one of 10, 25, 100, 500 or 1000.
+     *              Kraken doesn't send removals for levels pushed beyond it, so the books are truncated
+     *              to this depth after every update. Checksums assume it too, the books are always kept at it.
+     */
+    public Kraken(List<Instrument> instruments, int depth) {
+        super(instruments, checkDepth(depth));
+        this.depth = depth;
+        this.parser = new KrakenBookParser(this::updateLevel);
+        this.booksByPair = new SymbolTable<>(instruments.size());
+        this.checksums = new KrakenChecksum[instruments.size()];
+        this.resyncs = new int[instruments.size()];
+        this.dropped = new boolean[instruments.size()];
+        for (ExchangeBook book : getBooks()) {
+            booksByPair.put(pairOf(book.getInstrument()), book);
+            checksums[book.getIndex()] = new KrakenChecksum(book.getInstrument());
+        }
+    }
+
+    private static int checkDepth(int depth) {
+        if (Arrays.binarySearch(DEPTHS, depth) < 0) {
+            throw new IllegalArgumentException("Kraken book depth must be one of " + Arrays.toString(DEPTHS)
+                    + " but was " + depth);
+        }
+        return depth;
+    }
+
+    /**
+     * @return levels per side of the subscribed books
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return Kraken pair name of the instrument, like {@code XBT/USD}
+     */
+    public static String pairOf(Instrument instrument) {
+        return krakenAsset(instrument.getBase()) + "/" + krakenAsset(instrument.getQuote());
+    }
+
+    private static String krakenAsset(String asset) {
+        switch (asset) {
+            case "BTC":
+                return "XBT";
+            case "DOGE":
+                return "XDG";
+            default:
+                return asset;
+        }
+    }
 
     @Override
-    protected void onUpdateMessage(String input) {
+    protected void onUpdateMessage(ByteBuffer message) {
         try {
-            JsonElement element = gson.fromJson(input, JsonElement.class);
-            if (element.isJsonObject()) {
+            if (!parser.locatePair(message)) {
+                return; // {"event": ...} objects, heartbeats included
+            }
+            ExchangeBook book = booksByPair.get(message, parser.getPairFrom(), parser.getPairTo());
+            if (book == null || dropped[book.getIndex()]) {
                 return;
             }
-            JsonArray updates = element.getAsJsonArray();
-            updates.forEach(update -> {
-                if (update.isJsonObject()) {
-                    JsonObject updateObj = update.getAsJsonObject();
-                    updateObj.entrySet().forEach(entry -> {
-                        switch (entry.getKey()) {
-                            case "as":
-                            case "a":
-                                updateAsks(entry.getValue().getAsJsonArray());
-                                break;
-                            case "bs":
-                            case "b":
-                                updateBids(entry.getValue().getAsJsonArray());
-                                break;
-
-                        }
-                    });
-
+            parser.useInstrument(book.getInstrument());
+            messageBook = book;
+            if (parser.peekSnapshot(message)) {
+                loadSnapshot(book, message);
+                return;
+            }
+            beginUpdate(book);
+            try {
+                parser.parse(message);
+                if (parser.hasChecksum() && !book.isAwaitingSnapshot()) {
+                    verifyChecksum(book, parser.getChecksum());
                 }
-            });
+            } finally {
+                commitUpdate(book);
+            }
         } catch (Exception e) {
             System.out.println("error while parsing update message: ");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Loads an {@code as}/{@code bs} snapshot, it replaces the book in one step. The decimals of the snapshot are
+     * checked against the instrument scales first, a book that can't hold them is dropped.
+     */
+    private void loadSnapshot(ExchangeBook book, ByteBuffer message) {
+        beginSnapshot(book);
+        boolean loaded = false;
+        try {
+            parser.parse(message);
+            loaded = true;
+        } finally {
+            if (!loaded) {
+                abortSnapshot(book);
+            }
+        }
+        Instrument instrument = book.getInstrument();
+        int priceDecimals = parser.getPriceDecimals();
+        int volumeDecimals = parser.getVolumeDecimals();
+        if (priceDecimals > instrument.getPriceScale() || volumeDecimals > instrument.getSizeScale()) {
+            abortSnapshot(book);
+            drop(book, "Kraken sends " + priceDecimals + " price and " + volumeDecimals + " volume decimals, "
+                    + "the instrument keeps " + instrument.getPriceScale() + " and " + instrument.getSizeScale());
+            return;
+        }
+        checksums[book.getIndex()].useDecimals(priceDecimals, volumeDecimals);
+        book.setAwaitingSnapshot(false);
+        commitSnapshot(book);
+    }
 
-    private void updateAsks(JsonArray updates) {
-        updates.forEach(update -> updateAsk(update.getAsJsonArray()));
+    /**
+     * Compares the checksum Kraken sent with the local book. On a mismatch the book is cleared and the book
+     * subscription of its pair is renewed, updates are dropped until the fresh snapshot arrives. After
+     * {@link #MAX_RESYNCS} renewals without a matching checksum in between the book is dropped.
+     */
+    private void verifyChecksum(ExchangeBook book, long expected) {
+        long actual = checksums[book.getIndex()].compute(book.getAsks(), book.getBids());
+        if (actual == expected) {
+            resyncs[book.getIndex()] = 0;
+            return;
+        }
+        checksumMismatches++;
+        if (resyncs[book.getIndex()] >= MAX_RESYNCS) {
+            drop(book, "checksum mismatch after " + MAX_RESYNCS + " resubscriptions, expected " + expected
+                    + " but was " + actual);
+            return;
+        }
+        resyncs[book.getIndex()]++;
+        System.out.println(book + " book checksum mismatch, expected " + expected + " but was " + actual
+                + ", resubscribing");
+        book.setAwaitingSnapshot(true);
+        clearBook(book);
+        String pair = pairOf(book.getInstrument());
+        send(bookMessage("unsubscribe", Collections.singletonList(pair)));
+        send(bookMessage("subscribe", Collections.singletonList(pair)));
     }
 
-    private void updateBids(JsonArray updates) {
-        updates.forEach(update -> updateBid(update.getAsJsonArray()));
+    /**
+     * Gives up on a book, it is cleared and its pair unsubscribed. The other pairs of the connection go on.
+     */
+    private void drop(ExchangeBook book, String reason) {
+        System.out.println(book + " book dropped: " + reason);
+        dropped[book.getIndex()] = true;
+        book.setAwaitingSnapshot(true);
+        clearBook(book);
+        send(bookMessage("unsubscribe", Collections.singletonList(pairOf(book.getInstrument()))));
     }
 
-    private void updateAsk(JsonArray ask) {
-        BigDecimal price = ask.get(0).getAsBigDecimal();
-        BigDecimal amount = ask.get(1).getAsBigDecimal();
-        if (amount.compareTo(BigDecimal.ZERO) == 0) {
-            removeAsk(price);
-        } else {
-            updateAsks(price, amount);
-        }
+    /**
+     * @param symbol normalized symbol, like {@code BTC/USD}
+     * @return true if the book of the symbol was given up on and its pair unsubscribed
+     */
+    public boolean isDropped(String symbol) {
+        return dropped[getBook(symbol).getIndex()];
     }
 
-    private void updateBid(JsonArray ask) {
-        BigDecimal price = ask.get(0).getAsBigDecimal();
-        BigDecimal amount = ask.get(1).getAsBigDecimal();
-        if (amount.compareTo(BigDecimal.ZERO) == 0) {
-            removeBid(price);
+    private void updateLevel(Side side, long price, long amount, long timestamp) {
+        ExchangeBook book = messageBook;
+        lastLevelTimestamp = Math.max(lastLevelTimestamp, timestamp);
+        if (book.isLoadingSnapshot()) {
+            snapshotLevel(book, side, price, amount);
+            return;
+        }
+        if (book.isAwaitingSnapshot()) {
+            return;
+        }
+        if (side == Side.ASK) {
+            if (amount == 0) {
+                removeAsk(book, price);
+            } else {
+                updateAsks(book, price, amount);
+            }
         } else {
-            updateBids(price, amount);
+            if (amount == 0) {
+                removeBid(book, price);
+            } else {
+                updateBids(book, price, amount);
+            }
         }
     }
 
+    /**
+     * @return newest level timestamp received from Kraken, microseconds since the epoch
+     */
+    public long getLastLevelTimestamp() {
+        return lastLevelTimestamp;
+    }
+
+    /**
+     * @return number of updates whose checksum didn't match the local book
+     */
+    public long getChecksumMismatches() {
+        return checksumMismatches;
+    }
+
     @Override
+    protected void subscribe() {
+        send(getSubscribeMessage());
+    }
+
     protected String getSubscribeMessage() {
+        List<String> pairs = new ArrayList<>();
+        for (Instrument instrument : getInstruments()) {
+            pairs.add(pairOf(instrument));
+        }
+        return bookMessage("subscribe", pairs);
+    }
+
+    private String bookMessage(String event, List<String> pairs) {
         return "{\n" +
-                "  \"event\": \"subscribe\",\n" +
+                "  \"event\": \"" + event + "\",\n" +
                 "  \"pair\": [\n" +
-                "    \"XBT/USD\"\n" +
+                "    \"" + String.join("\",\n    \"", pairs) + "\"\n" +
                 "  ],\n" +
                 "  \"subscription\": {\n" +
-                "    \"name\": \"book\"\n" +
+                "    \"name\": \"book\",\n" +
+                "    \"depth\": " + depth + "\n" +
                 "  }\n" +
                 "}";
     }
@@ -0,0 +1,256 @@
+package com.phyre.exchange;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads Kraken book channel messages without building a JSON tree.
+ * <p>
+ * Handles {@code [channelID, {"as": [...], "bs": [...]}, "book-N", "XBT/USD"]} snapshots and
+ * {@code [channelID, {"a": [...]}, {"b": [...], "c": "checksum"}, "book-N", "XBT/USD"]} updates with one or two
+ * book objects. Every {@code [price, volume, timestamp(, "r")]} entry is handed to the {@link LevelHandler}
+ * as scaled longs while the message is read. Event objects like heartbeats are recognised by their first byte
+ * and skipped.
+ */
+final class KrakenBookParser {
+    static final int EVENT = 0;
+    static final int UPDATE = 1;
+    static final int SNAPSHOT = 2;
+    static final int OTHER = 3;
+
+    /**
+     * Timestamps are seconds with microsecond precision
+     */
+    static final int TIMESTAMP_SCALE = 6;
+
+    private static final byte[] ASKS_SNAPSHOT = ascii("as");
+    private static final byte[] BIDS_SNAPSHOT = ascii("bs");
+    private static final byte[] ASKS = ascii("a");
+    private static final byte[] BIDS = ascii("b");
+    private static final byte[] CHECKSUM = ascii("c");
+
+    private final JsonCursor cursor = new JsonCursor();
+    private int priceScale;
+    private int sizeScale;
+    private final LevelHandler handler;
+    private long channelId;
+    private int pairFrom;
+    private int pairTo;
+    private boolean hasChecksum;
+    private long checksum;
+    private int priceDecimals;
+    private int volumeDecimals;
+
+    KrakenBookParser(LevelHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Sets the scales levels are read with, the caller routes every message to its book before parsing it
+     */
+    void useInstrument(Instrument instrument) {
+        this.priceScale = instrument.getPriceScale();
+        this.sizeScale = instrument.getSizeScale();
+    }
+
+    /**
+     * Reads one message and passes its levels to the handler
+     *
+     * @return kind of the message, one of the constants of this class
+     */
+    int parse(ByteBuffer message) {
+        cursor.reset(message);
+        hasChecksum = false;
+        priceDecimals = -1;
+        volumeDecimals = -1;
+        if (!cursor.consume('[')) {
+            return EVENT; // {"event": ...} objects, heartbeats included
+        }
+        channelId = cursor.readLong();
+        int kind = OTHER;
+        while (cursor.hasNext(']')) {
+            if (cursor.peek() == '{') {
+                kind = readBookObject(kind);
+            } else {
+                cursor.skipValue(); // channel name and pair
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * Finds the pair name, the last element of book messages, so the message can be routed before
+     * its levels are read
+     *
+     * @return false if the message is not an array ending with a string
+     */
+    boolean locatePair(ByteBuffer message) {
+        int from = message.position();
+        int index = message.limit() - 1;
+        while (index > from && isWhitespace(message.get(index))) {
+            index--;
+        }
+        if (index <= from || message.get(index) != ']') {
+            return false;
+        }
+        index--;
+        while (index > from && isWhitespace(message.get(index))) {
+            index--;
+        }
+        if (index <= from || message.get(index) != '"') {
+            return false;
+        }
+        pairTo = index;
+        do {
+            index--;
+        } while (index > from && message.get(index) != '"');
+        pairFrom = index + 1;
+        return index > from;
+    }
+
+    /**
+     * @return buffer index of the first byte of the pair found by {@link #locatePair(ByteBuffer)}
+     */
+    int getPairFrom() {
+        return pairFrom;
+    }
+
+    /**
+     * @return buffer index after the last byte of the pair found by {@link #locatePair(ByteBuffer)}
+     */
+    int getPairTo() {
+        return pairTo;
+    }
+
+    long getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Checks whether a book message is a snapshot without parsing its levels, so it can be loaded as one
+     */
+    boolean peekSnapshot(ByteBuffer message) {
+        cursor.reset(message);
+        if (!cursor.consume('[')) {
+            return false;
+        }
+        cursor.readLong();
+        cursor.expect(',');
+        return cursor.consume('{')
+                && (cursor.consumeString(ASKS_SNAPSHOT) || cursor.consumeString(BIDS_SNAPSHOT));
+    }
+
+    /**
+     * @return most decimals Kraken wrote a price of the last parsed snapshot with, -1 if it had no levels
+     */
+    int getPriceDecimals() {
+        return priceDecimals;
+    }
+
+    /**
+     * @return most decimals Kraken wrote a volume of the last parsed snapshot with, -1 if it had no levels
+     */
+    int getVolumeDecimals() {
+        return volumeDecimals;
+    }
+
+    /**
+     * @return true if the last parsed message carried a checksum
+     */
+    boolean hasChecksum() {
+        return hasChecksum;
+    }
+
+    /**
+     * @return CRC32 checksum sent with the last parsed message
+     */
+    long getChecksum() {
+        return checksum;
+    }
+
+    private int readBookObject(int kind) {
+        cursor.expect('{');
+        if (cursor.consume('}')) {
+            return kind;
+        }
+        do {
+            if (cursor.consumeString(ASKS)) {
+                cursor.expect(':');
+                readLevels(Side.ASK, false);
+                kind = kind == SNAPSHOT ? SNAPSHOT : UPDATE;
+            } else if (cursor.consumeString(BIDS)) {
+                cursor.expect(':');
+                readLevels(Side.BID, false);
+                kind = kind == SNAPSHOT ? SNAPSHOT : UPDATE;
+            } else if (cursor.consumeString(ASKS_SNAPSHOT)) {
+                cursor.expect(':');
+                readLevels(Side.ASK, true);
+                kind = SNAPSHOT;
+            } else if (cursor.consumeString(BIDS_SNAPSHOT)) {
+                cursor.expect(':');
+                readLevels(Side.BID, true);
+                kind = SNAPSHOT;
+            } else if (cursor.consumeString(CHECKSUM)) {
+                cursor.expect(':');
+                checksum = cursor.readLong();
+                hasChecksum = true;
+            } else {
+                cursor.skipValue(); // unknown key
+                cursor.expect(':');
+                cursor.skipValue();
+            }
+        } while (cursor.hasNext('}'));
+        return kind;
+    }
+
+    /**
+     * @param snapshot true to note the decimals of the levels, Kraken writes all numbers of a pair with the same
+     *                 number of decimals, so a snapshot tells them
+     */
+    private void readLevels(Side side, boolean snapshot) {
+        cursor.expect('[');
+        if (cursor.consume(']')) {
+            return;
+        }
+        do {
+            cursor.expect('[');
+            long price = cursor.readDecimal(priceScale);
+            if (snapshot) {
+                priceDecimals = Math.max(priceDecimals, cursor.fractionDigits());
+            }
+            cursor.expect(',');
+            long volume = cursor.readDecimal(sizeScale);
+            if (snapshot) {
+                volumeDecimals = Math.max(volumeDecimals, cursor.fractionDigits());
+            }
+            cursor.expect(',');
+            long timestamp = cursor.readDecimal(TIMESTAMP_SCALE);
+            while (cursor.hasNext(']')) {
+                cursor.skipValue(); // "r" flag of republished levels
+            }
+            handler.onLevel(side, price, volume, timestamp);
+        } while (cursor.hasNext(']'));
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static byte[] ascii(String literal) {
+        return literal.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Receives the levels of a book message
+     */
+    @FunctionalInterface
+    interface LevelHandler {
+        /**
+         * @param side      side of the level
+         * @param price     scaled price
+         * @param volume    scaled volume, 0 removes the level
+         * @param timestamp time of the last change of the level in microseconds since the epoch
+         */
+        void onLevel(Side side, long price, long volume, long timestamp);
+    }
+}
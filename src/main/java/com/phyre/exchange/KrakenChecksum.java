@@ -0,0 +1,78 @@
+package com.phyre.exchange;
+
+import java.util.zip.CRC32;
+
+/**
+ * Computes the CRC32 checksum Kraken sends with book updates.
+ * <p>
+ * The checksum covers the top {@link #LEVELS} asks from the lowest price up followed by the top {@link #LEVELS}
+ * bids from the highest price down. Every level contributes the digits of its price and then its volume as
+ * Kraken writes them, without the decimal point and leading zeros. Kraken writes all prices and all volumes of
+ * a pair with a fixed number of decimals, so those digits are the scaled longs brought down from the instrument
+ * scales to Kraken's decimals, see {@link #useDecimals(int, int)}. Level text is cached by {@link FormattedLevels}.
+ */
+final class KrakenChecksum {
+    static final int LEVELS = 10;
+    /**
+     * Two longs of at most 19 digits each
+     */
+    private static final int MAX_LEVEL_BYTES = 38;
+
+    private final CRC32 crc = new CRC32();
+    private final int priceScale;
+    private final int sizeScale;
+    private final FormattedLevels asks = new FormattedLevels(LEVELS, MAX_LEVEL_BYTES, this::format);
+    private final FormattedLevels bids = new FormattedLevels(LEVELS, MAX_LEVEL_BYTES, this::format);
+    private long priceDivisor = 1;
+    private long volumeDivisor = 1;
+
+    /**
+     * Starts with Kraken's decimals equal to the instrument scales
+     */
+    KrakenChecksum(Instrument instrument) {
+        this.priceScale = instrument.getPriceScale();
+        this.sizeScale = instrument.getSizeScale();
+    }
+
+    /**
+     * Sets the decimals Kraken writes prices and volumes of the pair with, they must not exceed the
+     * instrument scales. A negative value keeps the current decimals.
+     */
+    void useDecimals(int priceDecimals, int volumeDecimals) {
+        if (priceDecimals > priceScale || volumeDecimals > sizeScale) {
+            throw new IllegalArgumentException("Kraken decimals " + priceDecimals + "/" + volumeDecimals
+                    + " exceed the instrument scales " + priceScale + "/" + sizeScale);
+        }
+        long newPriceDivisor = priceDecimals < 0 ? priceDivisor : FixedPoint.pow10(priceScale - priceDecimals);
+        long newVolumeDivisor = volumeDecimals < 0 ? volumeDivisor : FixedPoint.pow10(sizeScale - volumeDecimals);
+        if (newPriceDivisor != priceDivisor || newVolumeDivisor != volumeDivisor) {
+            priceDivisor = newPriceDivisor;
+            volumeDivisor = newVolumeDivisor;
+            asks.invalidate();
+            bids.invalidate();
+        }
+    }
+
+    /**
+     * @return unsigned checksum of the top levels of the two ladders
+     */
+    long compute(PriceLadder askLadder, PriceLadder bidLadder) {
+        crc.reset();
+        asks.refresh(askLadder);
+        update(asks);
+        bids.refresh(bidLadder);
+        update(bids);
+        return crc.getValue();
+    }
+
+    private void update(FormattedLevels levels) {
+        for (int i = 0; i < levels.size(); i++) {
+            crc.update(levels.text(i), 0, levels.length(i));
+        }
+    }
+
+    private int format(long price, long volume, byte[] target) {
+        int length = FormattedLevels.appendDigits(target, 0, price / priceDivisor);
+        return FormattedLevels.appendDigits(target, length, volume / volumeDivisor);
+    }
+}
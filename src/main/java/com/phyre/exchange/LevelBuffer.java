@@ -0,0 +1,93 @@
+package com.phyre.exchange;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of levels of one side in two parallel primitive arrays, reused for every snapshot of a book.
+ * Not thread safe.
+ */
+final class LevelBuffer {
+    private long[] prices;
+    private long[] amounts;
+    private int size;
+
+    LevelBuffer(int capacity) {
+        this.prices = new long[capacity];
+        this.amounts = new long[capacity];
+    }
+
+    void add(long price, long amount) {
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+        }
+        prices[size] = price;
+        amounts[size++] = amount;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long price(int index) {
+        return prices[index];
+    }
+
+    long amount(int index) {
+        return amounts[index];
+    }
+
+    /**
+     * Orders the levels from the touch outwards. Exchanges send snapshots in order already, which is checked
+     * in one pass before sorting.
+     */
+    void sortBestFirst(Side side) {
+        boolean descending = side == Side.BID;
+        for (int i = 1; i < size; i++) {
+            if (descending ? prices[i - 1] < prices[i] : prices[i - 1] > prices[i]) {
+                sort(0, size - 1, descending);
+                return;
+            }
+        }
+    }
+
+    private void sort(int low, int high, boolean descending) {
+        while (low < high) {
+            long pivot = prices[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (descending ? prices[i] > pivot : prices[i] < pivot) {
+                    i++;
+                }
+                while (descending ? prices[j] < pivot : prices[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse into the smaller part, loop over the larger one
+            if (j - low < high - i) {
+                sort(low, j, descending);
+                low = i;
+            } else {
+                sort(i, high, descending);
+                high = j;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long price = prices[i];
+        prices[i] = prices[j];
+        prices[j] = price;
+        long amount = amounts[i];
+        amounts[i] = amounts[j];
+        amounts[j] = amount;
+    }
+}
@@ -0,0 +1,173 @@
+package com.phyre.exchange;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pre-allocated single producer, single consumer ring of level deltas of one exchange.
+ * <p>
+ * The exchange feed thread offers level deltas and a commit entry at the end of every inbound message, each
+ * tagged with the index of the consolidated book it belongs to,
+ * the {@link Aggregator} thread drains them. Entries live in parallel primitive arrays, so passing a
+ * delta between threads doesn't allocate. A full ring makes the producer wait for the aggregator.
+ * <p>
+ * The aggregator only drains whole messages, up to a commit entry. Levels of a message still being written
+ * stay in the ring, so a consolidated book published for another exchange never holds half a message.
+ */
+final class LevelDeltaRing {
+    private static final byte BID = 0;
+    private static final byte ASK = 1;
+    private static final byte COMMIT = 2;
+
+    private final Aggregator aggregator;
+    private final WaitStrategy waitStrategy;
+    private final int mask;
+    private final byte[] kinds;
+    private final int[] books;
+    private final long[] prices;
+    private final long[] oldAmounts;
+    private final long[] newAmounts;
+
+    /**
+     * Next sequence to read, written by the aggregator only
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * Next sequence to write, written by the feed thread only
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Sequence after the last commit entry, written by the feed thread only
+     */
+    private final AtomicLong committedTail = new AtomicLong();
+    /**
+     * Last head seen by the producer, saves a volatile read per offer while the ring has room
+     */
+    private long cachedHead;
+
+    LevelDeltaRing(Aggregator aggregator, WaitStrategy waitStrategy, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.aggregator = aggregator;
+        this.waitStrategy = waitStrategy;
+        this.mask = capacity - 1;
+        this.kinds = new byte[capacity];
+        this.books = new int[capacity];
+        this.prices = new long[capacity];
+        this.oldAmounts = new long[capacity];
+        this.newAmounts = new long[capacity];
+    }
+
+    void offerLevel(int book, Side side, long price, long oldAmount, long newAmount) {
+        long sequence = claim();
+        int index = (int) (sequence & mask);
+        kinds[index] = side == Side.BID ? BID : ASK;
+        books[index] = book;
+        prices[index] = price;
+        oldAmounts[index] = oldAmount;
+        newAmounts[index] = newAmount;
+        tail.lazySet(sequence + 1);
+    }
+
+    /**
+     * Marks the end of an inbound message for a book and wakes the aggregator up.
+     * The committed tail is published with a volatile write, so it is ordered before the read of the sleeping flag in
+     * {@link Aggregator#signal()}. Either the aggregator sees the entry when it checks the rings after raising
+     * the flag, or this thread sees the flag and unparks it.
+     */
+    void offerCommit(int book) {
+        long sequence = claim();
+        int index = (int) (sequence & mask);
+        kinds[index] = COMMIT;
+        books[index] = book;
+        tail.lazySet(sequence + 1);
+        committedTail.set(sequence + 1);
+        aggregator.signal();
+    }
+
+    /**
+     * Applies the entries of finished messages, up to the last commit entry within {@code limit} entries.
+     * A message longer than the limit is applied as a whole. Only a ring filled by a single message without
+     * its commit entry is drained in parts, the producer couldn't finish the message otherwise.
+     *
+     * @return number of drained entries
+     */
+    int drain(int limit) {
+        long first = head.get();
+        long end = committedTail.get();
+        if (end <= first) {
+            end = tail.get();
+            if (end - first <= mask) {
+                return 0;
+            }
+        } else if (end - first > limit) {
+            end = endOfMessage(first, first + limit, end);
+        }
+        int count = (int) (end - first);
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((first + i) & mask);
+            byte kind = kinds[index];
+            if (kind == COMMIT) {
+                aggregator.commit(books[index]);
+            } else {
+                aggregator.level(books[index], kind == BID ? Side.BID : Side.ASK,
+                        prices[index], oldAmounts[index], newAmounts[index]);
+            }
+        }
+        head.lazySet(end);
+        return count;
+    }
+
+    /**
+     * @return sequence after the last commit entry before {@code limit}, or after the first one from
+     * {@code limit} on if there is none before it. {@code committedEnd - 1} is a commit entry.
+     */
+    private long endOfMessage(long first, long limit, long committedEnd) {
+        for (long sequence = limit - 1; sequence >= first; sequence--) {
+            if (kinds[(int) (sequence & mask)] == COMMIT) {
+                return sequence + 1;
+            }
+        }
+        for (long sequence = limit; sequence < committedEnd; sequence++) {
+            if (kinds[(int) (sequence & mask)] == COMMIT) {
+                return sequence + 1;
+            }
+        }
+        return committedEnd;
+    }
+
+    /**
+     * @return true if the ring holds no finished message and has room for the producer
+     */
+    boolean isEmpty() {
+        long first = head.get();
+        return committedTail.get() <= first && tail.get() - first <= mask;
+    }
+
+    private long claim() {
+        long sequence = tail.get();
+        if (sequence - cachedHead > mask) {
+            cachedHead = head.get();
+            while (sequence - cachedHead > mask) {
+                aggregator.signal();
+                waitForSpace();
+                cachedHead = head.get();
+            }
+        }
+        return sequence;
+    }
+
+    private void waitForSpace() {
+        switch (waitStrategy) {
+            case BLOCKING:
+                LockSupport.parkNanos(1000);
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            default:
+                Thread.onSpinWait();
+        }
+    }
+}
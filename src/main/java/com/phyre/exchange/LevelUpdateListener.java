@@ -0,0 +1,19 @@
+package com.phyre.exchange;
+
+/**
+ * Receives every price level change of an {@link Exchange} book as a delta,
+ * so consumers can keep derived books up to date without re-reading the whole book.
+ */
+@FunctionalInterface
+public interface LevelUpdateListener {
+
+    /**
+     * @param exchange   exchange whose book changed
+     * @param instrument instrument of the changed book
+     * @param side       side of the changed level
+     * @param price      price of the changed level, scaled by the instrument price scale
+     * @param oldAmount  amount at the price before the change, zero if the level was absent
+     * @param newAmount  amount at the price after the change, zero if the level was removed
+     */
+    void onLevelUpdate(Exchange exchange, Instrument instrument, Side side, long price, long oldAmount, long newAmount);
+}
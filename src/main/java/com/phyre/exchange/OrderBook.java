@@ -1,112 +1,270 @@
 package com.phyre.exchange;
 
-import java.math.BigDecimal;
+import com.phyre.websocketClient.EventLoop;
+
 import java.net.URISyntaxException;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
- * OrderBook takes exchanges and keeps track of all of them
+ * OrderBook takes exchanges and keeps track of all of them.
+ * <p>
+ * Every instrument subscribed on any exchange gets one consolidated book, keyed by its normalized symbol.
+ * Level deltas of every exchange go through a ring buffer to a single aggregator thread, which is the only
+ * thread that changes the consolidated books. All exchange connections share one {@link EventLoop} thread.
+ * <p>
+ * A {@link ExchangeBook#isGrouped() grouped} book, like a Bitfinex book subscribed with a coarser precision,
+ * holds the total amount of a price range at one group price. Merged next to other books it would count that
+ * amount at a price most of its orders are not at and could cross the consolidated book. A grouped book is
+ * therefore consolidated only when it is the only book of its symbol, otherwise it is left out and read from
+ * its exchange.
  */
 public class OrderBook {
     private final List<Exchange> exchanges;
-    private TreeMap<BigDecimal, BigDecimal> bids = new TreeMap<>();
-    private TreeMap<BigDecimal, BigDecimal> asks = new TreeMap<>();
+    private final List<Instrument> instruments = new ArrayList<>();
+    private final Map<String, Integer> indexBySymbol = new HashMap<>();
+    private final Book[] books;
+    private final int maxDepth;
+    private final Aggregator aggregator;
+    private final EventLoop eventLoop = new EventLoop("ExchangeEventLoop");
 
     public OrderBook(List<Exchange> exchanges) {
-        this.exchanges = exchanges;
-        initEmptyBidAsk();
-    }
-
-    private Comparator<BigDecimal> bidComparator() {
-        return (p1, p2) -> p1.compareTo(p2) * (-1);
+        this(exchanges, 0);
     }
 
-    private Comparator<BigDecimal> askComparator() {
-        return (p1, p2) -> p1.compareTo(p2) * (-1);
+    public OrderBook(List<Exchange> exchanges, int maxDepth) {
+        this(exchanges, maxDepth, WaitStrategy.BLOCKING, Aggregator.DEFAULT_RING_CAPACITY);
     }
 
-    private void initEmptyBidAsk() {
-        bids = new TreeMap<>(bidComparator());
-        asks = new TreeMap<>(askComparator());
+    /**
+     * @param maxDepth number of levels per side kept by every exchange that has no fixed depth of its own
+     *                 and shown by this book, 0 for unlimited. The consolidated book itself is never pruned,
+     *                 it holds at most one limited book worth of levels per exchange.
+     * @param waitStrategy how the aggregator waits for deltas and feed threads wait for a full ring
+     * @param ringCapacity number of deltas buffered per exchange, a power of two
+     */
+    public OrderBook(List<Exchange> exchanges, int maxDepth, WaitStrategy waitStrategy, int ringCapacity) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Max depth can't be negative");
+        }
+        this.exchanges = exchanges;
+        this.maxDepth = maxDepth;
+        for (Exchange exchange : exchanges) {
+            for (Instrument instrument : exchange.getInstruments()) {
+                Integer index = indexBySymbol.get(instrument.getSymbol());
+                if (index == null) {
+                    indexBySymbol.put(instrument.getSymbol(), instruments.size());
+                    instruments.add(instrument);
+                } else if (!instruments.get(index).equals(instrument)) {
+                    throw new IllegalArgumentException(exchange + " trades " + instrument
+                            + " with different scale than " + instruments.get(index));
+                }
+            }
+            if (maxDepth > 0 && !exchange.hasFixedDepth()) {
+                exchange.setMaxDepth(maxDepth);
+            }
+        }
+        this.books = new Book[instruments.size()];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = new Book(instruments.get(i));
+        }
+        this.aggregator = new Aggregator(this, books.length, waitStrategy, ringCapacity);
     }
 
 
+    /**
+     * Starts the aggregator and connects all exchanges
+     *
+     * @return aggregator and event loop threads
+     */
     public List<Thread> start() {
-        return exchanges.stream().map(exchange -> {
-            exchange.onUpdate(this::aggregate);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(startAggregator());
+        threads.add(eventLoop.start());
+        for (Exchange exchange : exchanges) {
             try {
-                return exchange.start();
+                Thread thread = exchange.start(eventLoop);
+                if (!threads.contains(thread)) {
+                    threads.add(thread);
+                }
             } catch (URISyntaxException e) {
                 System.out.println("error on exchange: ");
                 e.printStackTrace();
-                return null;
             }
-        }).collect(Collectors.toList());
-    }
-
-    public void stop() {
-        exchanges.forEach(Exchange::stop);
+        }
+        return threads;
     }
 
-    private synchronized void aggregate() {
-        initEmptyBidAsk();
+    /**
+     * Feeds the level updates of the exchange books to the aggregator and starts it. A grouped book is only fed
+     * if no other book has its symbol.
+     *
+     * @return aggregator thread
+     */
+    Thread startAggregator() {
+        int[] feeds = new int[books.length];
         for (Exchange exchange : exchanges) {
-            exchange.getBidReadLock().lock();
-            for (BigDecimal price : exchange.getBids().keySet()) {
-                if (this.bids.containsKey(price)) {
-                    this.bids.put(price, this.bids.get(price).add(exchange.getBids().get(price)));
-                } else {
-                    this.bids.put(price, exchange.getBids().get(price));
-                }
+            for (ExchangeBook exchangeBook : exchange.getBooks()) {
+                feeds[indexBySymbol.get(exchangeBook.getInstrument().getSymbol())]++;
             }
-            exchange.getBidReadLock().unlock();
-            exchange.getAskReadLock().lock();
-            for (BigDecimal price : exchange.getAsks().keySet()) {
-                if (this.asks.containsKey(price)) {
-                    this.asks.put(price, this.asks.get(price).add(exchange.getAsks().get(price)));
-                } else {
-                    this.asks.put(price, exchange.getAsks().get(price));
+        }
+        for (Exchange exchange : exchanges) {
+            LevelDeltaRing ring = aggregator.newRing();
+            for (ExchangeBook exchangeBook : exchange.getBooks()) {
+                int book = indexBySymbol.get(exchangeBook.getInstrument().getSymbol());
+                if (exchangeBook.isGrouped() && feeds[book] > 1) {
+                    System.out.println(exchangeBook + " book is grouped, it is not consolidated next to the other "
+                            + "books of its symbol");
+                    continue;
                 }
+                exchangeBook.onLevelUpdate((source, instrument, side, price, oldAmount, newAmount) ->
+                        ring.offerLevel(book, side, price, oldAmount, newAmount));
+                exchangeBook.onUpdate(() -> ring.offerCommit(book));
             }
-            exchange.getAskReadLock().unlock();
         }
-        if (this.bids.size() > 0 && this.asks.size() > 0)
-            print();
+        return aggregator.start();
+    }
+
+    public void stop() {
+        exchanges.forEach(Exchange::stop);
+        eventLoop.stop();
+        aggregator.stop();
+    }
+
+    /**
+     * Applies a single level change of one exchange to a consolidated book.
+     * Only the changed price is touched, so the cost does not depend on the book depth.
+     * Called on the aggregator thread.
+     *
+     * @throws IllegalStateException if the level would turn negative, which only a lost or repeated delta causes
+     */
+    void aggregate(int bookIndex, Side side, long price, long oldAmount, long newAmount) {
+        long delta = newAmount - oldAmount;
+        if (delta == 0) {
+            return;
+        }
+        Book book = books[bookIndex];
+        long amount = book.get(side, price) + delta;
+        if (amount < 0) {
+            throw new IllegalStateException(book.getInstrument() + " " + side + " level at " + price
+                    + " would turn negative, " + oldAmount + " -> " + newAmount + " leaves " + amount);
+        }
+        if (!book.isUpdating()) {
+            book.beginUpdate(); // committed by the next publish
+        }
+        book.set(side, price, amount);
+    }
+
+    /**
+     * Publishes a consolidated book after one or more exchanges finished a message for it.
+     * Called on the aggregator thread.
+     */
+    void publish(int bookIndex) {
+        Book book = books[bookIndex];
+        if (book.isUpdating()) {
+            book.commitUpdate();
+        }
+        book.publishSnapshot(maxDepth > 0 ? maxDepth : Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return latest immutable snapshot of the consolidated book of the symbol, safe to use from any thread
+     */
+    public BookSnapshot getSnapshot(String symbol) {
+        return book(symbol).getSnapshot();
     }
 
-    private void print() {
+    public long getBestBid(String symbol) {
+        return book(symbol).getBestBid();
+    }
 
-        System.out.println(this);
-        System.out.println("***************************");
+    public long getBestBidAmount(String symbol) {
+        return book(symbol).getBestBidAmount();
     }
 
+    public long getBestAsk(String symbol) {
+        return book(symbol).getBestAsk();
+    }
+
+    public long getBestAskAmount(String symbol) {
+        return book(symbol).getBestAskAmount();
+    }
+
+    public long getSpread(String symbol) {
+        return book(symbol).getSpread();
+    }
+
+    public long getMid(String symbol) {
+        return book(symbol).getMid();
+    }
 
+    /**
+     * @return instruments of all consolidated books, in the order exchanges listed them first
+     */
+    public List<Instrument> getInstruments() {
+        return Collections.unmodifiableList(instruments);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Registers a listener called whenever the consolidated best bid or ask of the symbol changes
+     */
+    public void onBbo(String symbol, BboListener onBbo) {
+        book(symbol).onBbo(onBbo);
+    }
+
+    private Book book(String symbol) {
+        Integer index = indexBySymbol.get(symbol);
+        if (index == null) {
+            throw new IllegalArgumentException("No exchange is subscribed to " + symbol);
+        }
+        return books[index];
+    }
+
+
+    /**
+     * Describes the latest published snapshot of every consolidated book, safe to call from any thread
+     */
     @Override
     public String toString() {
-        return "Exchange{ \n" +
-                "asks: \n" + treeMapToString(asks) +
-                "\n bids: \n" + treeMapToString(bids) +
-                "\n Best bid: " + entryToString(bids.firstKey(), bids.firstEntry().getValue()) + "\n" +
-                "Best ask: " + entryToString(asks.lastKey(), asks.lastEntry().getValue()) +
-                "\n } "
-                ;
+        StringBuilder result = new StringBuilder();
+        for (Book book : books) {
+            BookSnapshot snapshot = book.getSnapshot();
+            BookSnapshot.Levels asks = snapshot.getAsks();
+            BookSnapshot.Levels bids = snapshot.getBids();
+            result.append("Exchange{ ").append(snapshot.getInstrument()).append(" \n")
+                    .append("asks: \n").append(levelsToString(snapshot, asks))
+                    .append("\n bids: \n").append(levelsToString(snapshot, bids))
+                    .append("\n Best bid: ").append(bestToString(snapshot, bids)).append("\n")
+                    .append("Best ask: ").append(bestToString(snapshot, asks))
+                    .append("\n } ");
+        }
+        return result.toString();
+    }
+
+    String levelsToString(BookSnapshot snapshot, BookSnapshot.Levels levels) {
+        StringBuilder levelsString = new StringBuilder();
+        levelsString.append("[ \n ");
+        for (int i = 0; i < levels.size(); i++) {
+            levelsString.append(entryToString(snapshot, levels.price(i), levels.amount(i))).append("\n");
+        }
+        levelsString.append("\n ]");
+        return levelsString.toString();
     }
 
-    String treeMapToString(TreeMap<BigDecimal, BigDecimal> treeMap) {
-        StringBuilder treeMapString = new StringBuilder();
-        treeMapString.append("[ \n ");
-        treeMap.forEach((price, amount) -> treeMapString
-                .append(entryToString(price, amount))
-                .append("\n"));
-        treeMapString.append("\n ]");
-        return treeMapString.toString();
+    private String bestToString(BookSnapshot snapshot, BookSnapshot.Levels levels) {
+        return levels.size() > 0 ? entryToString(snapshot, levels.price(0), levels.amount(0))
+                : entryToString(snapshot, 0, 0);
     }
 
-    String entryToString(BigDecimal price, BigDecimal amount) {
+    String entryToString(BookSnapshot snapshot, long price, long amount) {
 
-        return "  [" + price + ", " + amount + " ]";
+        return "  [" + snapshot.priceToDecimal(price) + ", " + snapshot.sizeToDecimal(amount) + " ]";
     }
 }
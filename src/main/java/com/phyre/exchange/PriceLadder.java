@@ -0,0 +1,355 @@
+package com.phyre.exchange;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * One side of a price book stored as a tick-indexed circular array.
+ * <p>
+ * The array covers a window of {@code capacity} consecutive ticks centred on the best level, a price
+ * maps to slot {@code (price / tickSize) & mask}, so updates near the touch are plain array writes.
+ * Prices outside the window or off the tick grid are kept in a sparse {@link TreeMap}. When the best level
+ * drifts into the outer quarter of the window, the window is moved and levels are migrated between
+ * the array and the sparse map.
+ * <p>
+ * A quantity of zero means the level is absent. Not thread safe, the owner guards access.
+ */
+public class PriceLadder {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Side side;
+    private final long tickSize;
+    private final int capacity;
+    private final int mask;
+    private final long[] quantities;
+    private final TreeMap<Long, Long> sparse = new TreeMap<>();
+
+    /**
+     * First tick of the window, the window is [lowTick, lowTick + capacity)
+     */
+    private long lowTick;
+    private boolean anchored;
+    /**
+     * Number of non empty array slots
+     */
+    private int arrayLevels;
+    /**
+     * Best tick held in the array, valid only when arrayLevels > 0
+     */
+    private long bestTick;
+    /**
+     * Worst tick held in the array, valid only when arrayLevels > 0
+     */
+    private long worstTick;
+
+    public PriceLadder(Side side, long tickSize) {
+        this(side, tickSize, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param side     BID ladders are best at the highest price, ASK ladders at the lowest
+     * @param tickSize price increment in scaled price units
+     * @param capacity number of ticks held in the array, must be a power of two
+     */
+    public PriceLadder(Side side, long tickSize, int capacity) {
+        if (tickSize <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        if (capacity < 4 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, at least 4");
+        }
+        this.side = side;
+        this.tickSize = tickSize;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.quantities = new long[capacity];
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * Sets the quantity at the price, a quantity of zero removes the level
+     *
+     * @return quantity at the price before the change
+     */
+    public long set(long price, long quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Negative quantity " + quantity + " at " + price);
+        }
+        long old;
+        if (price % tickSize != 0) {
+            old = setSparse(price, quantity);
+        } else {
+            long tick = price / tickSize;
+            if (!inWindow(tick) && quantity != 0 && arrayLevels == 0) {
+                moveWindow(tick - capacity / 2);
+            }
+            old = inWindow(tick) ? setSlot(tick, quantity) : setSparse(price, quantity);
+        }
+        if (old != quantity) {
+            keepBestCentred();
+        }
+        return old;
+    }
+
+    public long remove(long price) {
+        return set(price, 0);
+    }
+
+    public long get(long price) {
+        if (price % tickSize == 0 && inWindow(price / tickSize)) {
+            return quantities[slot(price / tickSize)];
+        }
+        Long quantity = sparse.get(price);
+        return quantity == null ? 0 : quantity;
+    }
+
+    public int size() {
+        return arrayLevels + sparse.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return best price, or 0 when the ladder is empty
+     */
+    public long bestPrice() {
+        if (sparse.isEmpty()) {
+            return arrayLevels > 0 ? bestTick * tickSize : 0;
+        }
+        long sparseBest = side == Side.BID ? sparse.lastKey() : sparse.firstKey();
+        if (arrayLevels == 0 || isBetter(sparseBest, bestTick * tickSize)) {
+            return sparseBest;
+        }
+        return bestTick * tickSize;
+    }
+
+    /**
+     * @return quantity at the best price, or 0 when the ladder is empty
+     */
+    public long bestQuantity() {
+        return isEmpty() ? 0 : get(bestPrice());
+    }
+
+    /**
+     * @return price of the level furthest from the touch, or 0 when the ladder is empty
+     */
+    public long worstPrice() {
+        if (sparse.isEmpty()) {
+            return arrayLevels > 0 ? worstTick * tickSize : 0;
+        }
+        long sparseWorst = side == Side.BID ? sparse.firstKey() : sparse.lastKey();
+        if (arrayLevels == 0 || isBetter(worstTick * tickSize, sparseWorst)) {
+            return sparseWorst;
+        }
+        return worstTick * tickSize;
+    }
+
+    /**
+     * Removes levels beyond the first {@code maxLevels} from the touch, worst first
+     *
+     * @param removed receives price and quantity of every removed level
+     */
+    public void truncate(int maxLevels, LevelConsumer removed) {
+        while (size() > maxLevels) {
+            long price = worstPrice();
+            removed.accept(price, set(price, 0));
+        }
+    }
+
+    public void clear() {
+        if (arrayLevels > 0) {
+            Arrays.fill(quantities, 0);
+            arrayLevels = 0;
+        }
+        sparse.clear();
+        anchored = false;
+    }
+
+    /**
+     * Walks all levels from the best price outwards
+     */
+    public void forEach(LevelConsumer consumer) {
+        forEach(Integer.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Walks at most {@code maxLevels} levels from the best price outwards.
+     * The ladder must not change during the walk. A walk that runs off the window because it did fails with
+     * {@link ConcurrentModificationException} instead of looping.
+     */
+    public void forEach(int maxLevels, LevelConsumer consumer) {
+        int remaining = Math.min(maxLevels, size());
+        NavigableMap<Long, Long> sparseInOrder = side == Side.BID ? sparse.descendingMap() : sparse;
+        Iterator<Map.Entry<Long, Long>> sparseLevels = sparseInOrder.entrySet().iterator();
+        Map.Entry<Long, Long> nextSparse = sparseLevels.hasNext() ? sparseLevels.next() : null;
+
+        int arrayRemaining = arrayLevels;
+        long tick = bestTick;
+        int step = awayFromTouch();
+        while (remaining > 0) {
+            long arrayPrice = 0;
+            if (arrayRemaining > 0) {
+                while (quantities[slot(tick)] == 0) {
+                    tick += step;
+                    if (!inWindow(tick)) {
+                        throw new ConcurrentModificationException("Ladder changed while walking it");
+                    }
+                }
+                arrayPrice = tick * tickSize;
+            }
+            if (nextSparse != null && (arrayRemaining == 0 || isBetter(nextSparse.getKey(), arrayPrice))) {
+                consumer.accept(nextSparse.getKey(), nextSparse.getValue());
+                nextSparse = sparseLevels.hasNext() ? sparseLevels.next() : null;
+            } else {
+                consumer.accept(arrayPrice, quantities[slot(tick)]);
+                arrayRemaining--;
+                tick += step;
+            }
+            remaining--;
+        }
+    }
+
+    /**
+     * @return true if price {@code p1} is better than {@code p2} on this side
+     */
+    public boolean isBetter(long p1, long p2) {
+        return side == Side.BID ? p1 > p2 : p1 < p2;
+    }
+
+    private long setSparse(long price, long quantity) {
+        Long old = quantity == 0 ? sparse.remove(price) : sparse.put(price, quantity);
+        return old == null ? 0 : old;
+    }
+
+    private long setSlot(long tick, long quantity) {
+        int slot = slot(tick);
+        long old = quantities[slot];
+        quantities[slot] = quantity;
+        if (old == 0 && quantity != 0) {
+            if (arrayLevels++ == 0) {
+                bestTick = tick;
+                worstTick = tick;
+            } else if (isBetter(tick, bestTick)) {
+                bestTick = tick;
+            } else if (isBetter(worstTick, tick)) {
+                worstTick = tick;
+            }
+        } else if (old != 0 && quantity == 0) {
+            if (--arrayLevels > 0) {
+                if (tick == bestTick) {
+                    bestTick = nextLevel(tick, awayFromTouch());
+                } else if (tick == worstTick) {
+                    worstTick = nextLevel(tick, -awayFromTouch());
+                }
+            }
+        }
+        return old;
+    }
+
+    /**
+     * @return tick step that moves away from the touch
+     */
+    private int awayFromTouch() {
+        return side == Side.BID ? -1 : 1;
+    }
+
+    /**
+     * @return first non empty tick after {@code tick} in direction {@code step}, arrayLevels must be positive
+     */
+    private long nextLevel(long tick, int step) {
+        do {
+            tick += step;
+        } while (quantities[slot(tick)] == 0);
+        return tick;
+    }
+
+    /**
+     * Moves the window when the best level on the tick grid left its central half
+     */
+    private void keepBestCentred() {
+        if (size() == 0) {
+            return;
+        }
+        long best = bestPrice();
+        if (best % tickSize != 0) {
+            return;
+        }
+        long tick = best / tickSize;
+        long offset = tick - lowTick;
+        if (offset < capacity / 4 || offset >= capacity - capacity / 4) {
+            moveWindow(tick - capacity / 2);
+        }
+    }
+
+    private void moveWindow(long newLowTick) {
+        if (anchored) {
+            long shift = newLowTick - lowTick;
+            if (Math.abs(shift) >= capacity) {
+                evict(lowTick, lowTick + capacity);
+            } else if (shift > 0) {
+                evict(lowTick, newLowTick);
+            } else {
+                evict(newLowTick + capacity, lowTick + capacity);
+            }
+        }
+        lowTick = newLowTick;
+        anchored = true;
+
+        Iterator<Map.Entry<Long, Long>> entering = sparse
+                .subMap(lowTick * tickSize, true, (lowTick + capacity) * tickSize, false)
+                .entrySet().iterator();
+        while (entering.hasNext()) {
+            Map.Entry<Long, Long> level = entering.next();
+            if (level.getKey() % tickSize == 0) {
+                quantities[slot(level.getKey() / tickSize)] = level.getValue();
+                arrayLevels++;
+                entering.remove();
+            }
+        }
+        if (arrayLevels > 0) {
+            long aboveWindow = lowTick + capacity;
+            long belowWindow = lowTick - 1;
+            bestTick = nextLevel(side == Side.BID ? aboveWindow : belowWindow, awayFromTouch());
+            worstTick = nextLevel(side == Side.BID ? belowWindow : aboveWindow, -awayFromTouch());
+        }
+    }
+
+    /**
+     * Moves array levels of ticks [fromTick, toTick) to the sparse map
+     */
+    private void evict(long fromTick, long toTick) {
+        for (long tick = fromTick; tick < toTick && arrayLevels > 0; tick++) {
+            int slot = slot(tick);
+            if (quantities[slot] != 0) {
+                sparse.put(tick * tickSize, quantities[slot]);
+                quantities[slot] = 0;
+                arrayLevels--;
+            }
+        }
+    }
+
+    private boolean inWindow(long tick) {
+        return anchored && tick >= lowTick && tick < lowTick + capacity;
+    }
+
+    private int slot(long tick) {
+        return (int) (tick & mask);
+    }
+
+    /**
+     * Receives levels while walking a ladder
+     */
+    @FunctionalInterface
+    public interface LevelConsumer {
+        void accept(long price, long quantity);
+    }
+}
@@ -0,0 +1,8 @@
+package com.phyre.exchange;
+
+/**
+ * Side of the book a price level belongs to
+ */
+public enum Side {
+    BID, ASK
+}
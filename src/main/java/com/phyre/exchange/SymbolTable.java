@@ -0,0 +1,74 @@
+package com.phyre.exchange;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Maps exchange pair names to values and looks them up straight from the bytes of a message,
+ * so routing a message by its pair name doesn't decode a String. Filled once, then only read.
+ */
+final class SymbolTable<V> {
+    private final byte[][] keys;
+    private final Object[] values;
+    private final int mask;
+
+    /**
+     * @param capacity maximum number of names the table will hold
+     */
+    SymbolTable(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+        this.keys = new byte[slots][];
+        this.values = new Object[slots];
+        this.mask = slots - 1;
+    }
+
+    void put(String name, V value) {
+        byte[] key = name.getBytes(StandardCharsets.US_ASCII);
+        int slot = hash(key, 0, key.length) & mask;
+        while (keys[slot] != null) {
+            if (equals(keys[slot], ByteBuffer.wrap(key), 0, key.length)) {
+                throw new IllegalArgumentException("Name " + name + " is already mapped");
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * @return value of the name held by bytes {@code [from, to)} of the buffer, null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(ByteBuffer buffer, int from, int to) {
+        for (int slot = hash(buffer, from, to) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (equals(keys[slot], buffer, from, to)) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    private static boolean equals(byte[] key, ByteBuffer buffer, int from, int to) {
+        if (key.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        return hash(ByteBuffer.wrap(bytes), from, to);
+    }
+
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,19 @@
+package com.phyre.exchange;
+
+/**
+ * How the aggregator thread waits for level deltas, and how feed threads wait for space in a full ring
+ */
+public enum WaitStrategy {
+    /**
+     * Parks the thread until it is signalled, lowest CPU usage and highest wake up latency
+     */
+    BLOCKING,
+    /**
+     * Yields to other threads between checks
+     */
+    YIELDING,
+    /**
+     * Spins on a core between checks, lowest latency at the cost of a fully used core
+     */
+    BUSY_SPIN
+}
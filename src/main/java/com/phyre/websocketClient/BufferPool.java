@@ -0,0 +1,121 @@
+package com.phyre.websocketClient;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Direct buffers reused by all connections of an {@link EventLoop}, in power of two size classes. Reads, TLS
+ * records, partial frames and fragmented messages all come from here, so decoding allocates nothing once the
+ * pool holds a buffer of every size in use. Connections take a buffer only while they hold unprocessed bytes and
+ * give it back right after. Confined to the loop thread, not thread safe.
+ * <p>
+ * Every pooled buffer comes with a read-only view of its content, so frame payloads can be handed out as part
+ * of the buffer they were received in. A pooled buffer is flagged while it is in use, releasing it twice fails
+ * instead of handing it to two owners later.
+ */
+final class BufferPool {
+    private static final int MIN_SHIFT = 8;
+    private final int defaultSize;
+    private final int maxShift;
+    private final List<ArrayDeque<ByteBuffer>> free;
+    private final int[] maxPooled;
+    private final Map<ByteBuffer, PooledBuffer> pooled = new IdentityHashMap<>();
+
+    /**
+     * @param defaultSize    size of read buffers, see {@link #acquire()}
+     * @param maxSize        largest buffer kept, larger ones are allocated for one use
+     * @param maxPooledBytes bytes kept per size class at most, but at least two buffers
+     */
+    BufferPool(int defaultSize, int maxSize, int maxPooledBytes) {
+        this.defaultSize = defaultSize;
+        this.maxShift = shift(maxSize);
+        int sizeClasses = maxShift - MIN_SHIFT + 1;
+        this.free = new ArrayList<>(sizeClasses);
+        this.maxPooled = new int[sizeClasses];
+        for (int i = 0; i < sizeClasses; i++) {
+            free.add(new ArrayDeque<>());
+            maxPooled[i] = Math.max(2, maxPooledBytes >> (MIN_SHIFT + i));
+        }
+    }
+
+    int getDefaultSize() {
+        return defaultSize;
+    }
+
+    /**
+     * @return an empty buffer of the default size, ready to be filled
+     */
+    ByteBuffer acquire() {
+        return acquire(defaultSize);
+    }
+
+    /**
+     * @return an empty buffer with room for at least {@code size} bytes, ready to be filled
+     */
+    ByteBuffer acquire(int size) {
+        int shift = shift(size);
+        if (shift > maxShift) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        ByteBuffer buffer = free.get(shift - MIN_SHIFT).pollLast();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << shift);
+            pooled.put(buffer, new PooledBuffer(buffer.asReadOnlyBuffer()));
+        }
+        pooled.get(buffer).inUse = true;
+        return buffer;
+    }
+
+    /**
+     * @return read-only view sharing the content of the buffer, position and limit are left to the caller.
+     * Views of pooled buffers are reused, other buffers get a new one.
+     */
+    ByteBuffer view(ByteBuffer buffer) {
+        PooledBuffer entry = pooled.get(buffer);
+        return entry != null ? entry.view : buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Takes a buffer back, buffers not from the pool and buffers beyond the pooled bytes are left to the GC
+     *
+     * @throws IllegalStateException if the buffer was released already
+     */
+    void release(ByteBuffer buffer) {
+        PooledBuffer entry = pooled.get(buffer);
+        if (entry == null) {
+            return; // not from the pool
+        }
+        if (!entry.inUse) {
+            throw new IllegalStateException("Buffer released twice");
+        }
+        entry.inUse = false;
+        int sizeClass = shift(buffer.capacity()) - MIN_SHIFT;
+        ArrayDeque<ByteBuffer> idle = free.get(sizeClass);
+        if (idle.size() < maxPooled[sizeClass]) {
+            buffer.clear();
+            idle.addLast(buffer);
+        } else {
+            pooled.remove(buffer);
+        }
+    }
+
+    private static int shift(int size) {
+        return Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /**
+     * Read-only view and in use flag of a pooled buffer
+     */
+    private static final class PooledBuffer {
+        private final ByteBuffer view;
+        private boolean inUse;
+
+        private PooledBuffer(ByteBuffer view) {
+            this.view = view;
+        }
+    }
+}
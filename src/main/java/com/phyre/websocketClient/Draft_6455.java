@@ -27,34 +27,76 @@ package com.phyre.websocketClient;
 
 import lombok.extern.slf4j.Slf4j;
 import com.phyre.websocketClient.exceptions.*;
+import com.phyre.websocketClient.framing.BinaryFrame;
 import com.phyre.websocketClient.framing.CloseFrame;
+import com.phyre.websocketClient.framing.ContinuousFrame;
 import com.phyre.websocketClient.framing.Framedata;
 import com.phyre.websocketClient.framing.FramedataImpl1;
+import com.phyre.websocketClient.framing.PingFrame;
+import com.phyre.websocketClient.framing.PongFrame;
 import com.phyre.websocketClient.framing.TextFrame;
 import com.phyre.websocketClient.util.Charsetfunctions;
 
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 @Slf4j
 public class Draft_6455 {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
-    private Framedata currentContinuousFrame;
+    /**
+     * Opcode of the fragmented message being received, null if there is none
+     */
+    private Opcode continuousOpcode;
+
+    /**
+     * Attribute for the payload of the current continuous frame, a pooled buffer
+     */
+    private ByteBuffer continuousPayload;
+
+    /**
+     * Part of the frame the decoder waits for next
+     */
+    private DecoderState state = DecoderState.OPCODE;
 
     /**
-     * Attribute for the payload of the current continuous frame
+     * First header byte of the frame being received, holding fin, rsv bits and opcode
      */
-    private final List<ByteBuffer> byteBufferList;
+    private byte frameHeader;
+
+    private Opcode frameOpcode;
+
+    /**
+     * Payload length of the frame being received, assembled byte by byte when it is an extended length
+     */
+    private long payloadLength;
 
     /**
-     * Attribute for the current incomplete frame
+     * Extended payload length bytes still expected
      */
-    private ByteBuffer incompleteframe;
+    private int lengthBytes;
+
+    /**
+     * Payload of a frame split over reads, a pooled buffer limited to the payload length. Frames received
+     * in one piece never need it.
+     */
+    private ByteBuffer partialPayload;
+
+    /**
+     * Pool of payload and partial frame buffers, shared with the other connections of the event loop
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * Frames reused for every received message, each frame is processed before the next one is translated
+     */
+    private final TextFrame textFrame = new TextFrame();
+    private final BinaryFrame binaryFrame = new BinaryFrame();
+    private final ContinuousFrame continuousFrame = new ContinuousFrame();
+    private final PingFrame pingFrame = new PingFrame();
+    private final PongFrame pongFrame = new PongFrame();
 
     /**
      * Attribute for the reusable random instance
@@ -64,7 +106,11 @@ public class Draft_6455 {
     private final int maxFrameSize = Integer.MAX_VALUE;
 
     public Draft_6455() {
-        byteBufferList = new ArrayList<>();
+        this(new BufferPool(EventLoop.BUFFER_SIZE, EventLoop.MAX_POOLED_SIZE, EventLoop.MAX_POOLED_BYTES));
+    }
+
+    Draft_6455(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
     }
 
     public int getMaxFrameSize() {
@@ -121,99 +167,141 @@ public class Draft_6455 {
         return one;
     }
 
-    private Framedata translateSingleFrame(ByteBuffer buffer)
-            throws IncompleteException, InvalidDataException {
-        if (buffer == null) {
-            throw new IllegalArgumentException();
-        }
-        int currentPacketSize = buffer.remaining();
-        int realpacketsize = 2;
-        validateResponsePacketSize(currentPacketSize, realpacketsize);
-        byte b1 = buffer.get(/*0*/);
-        boolean fin = b1 >> 8 != 0;
-        boolean rsv1 = (b1 & 0x40) != 0;
-        boolean rsv2 = (b1 & 0x20) != 0;
-        boolean rsv3 = (b1 & 0x10) != 0;
-        byte b2 = buffer.get(/*1*/);
-        boolean mask = (b2 & -128) != 0;
-        int payloadlength = (byte) (b2 & ~(byte) 128); //last 7 bits of second byte
-        Opcode optcode = toOpcode((byte) (b1 & 15));
-        if (mask) {
+    /**
+     * Reads the second header byte, it holds the mask flag and the payload length or announces an extended one
+     */
+    private void readPayloadLength(WebsocketClient wsClient, ByteBuffer buffer, byte b2)
+            throws InvalidDataException {
+        if ((b2 & -128) != 0) {
             throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR, "Mask shouldn't be presented in server frame");
         }
-        if (!(payloadlength <= 125)) {
-            TranslatedPayloadMetaData payloadData = translateSingleFramePayloadLength(buffer,
-                    payloadlength, currentPacketSize, realpacketsize);
-            payloadlength = payloadData.getPayloadLength();
-            realpacketsize = payloadData.getRealPackageSize();
+        int length = b2 & 0x7F;
+        if (length == 126) { // the following 2 bytes are the length as 16-bit unsigned integer
+            beginExtendedLength(2);
+        } else if (length == 127) { // the following 8 bytes are the length as 64-bit unsigned integer
+            beginExtendedLength(8);
+        } else {
+            payloadLength = length;
+            beginPayload(wsClient, buffer);
         }
-        checkFrameLengthLimit(payloadlength);
-        realpacketsize += payloadlength;
+    }
 
-        validateResponsePacketSize(currentPacketSize, realpacketsize);
-        ByteBuffer payload = ByteBuffer.allocate(checkAlloc(payloadlength));
+    private void beginExtendedLength(int bytes) {
+        payloadLength = 0;
+        lengthBytes = bytes;
+        state = DecoderState.EXTENDED_LENGTH;
+    }
 
-        payload.put(buffer.array(), buffer.position(), payload.limit());
-        buffer.position(buffer.position() + payload.limit());
-        FramedataImpl1 frame = FramedataImpl1.get(optcode);
+    private void beginPayload(WebsocketClient wsClient, ByteBuffer buffer) throws InvalidDataException {
+        checkFrameLengthLimit(payloadLength);
+        state = DecoderState.PAYLOAD;
+        readPayload(wsClient, buffer); // an empty payload completes the frame right away
+    }
 
-        frame.setFin(fin);
-        frame.setRSV1(rsv1);
-        frame.setRSV2(rsv2);
-        frame.setRSV3(rsv3);
-        payload.flip();
-        frame.setPayload(payload);
+    /**
+     * Takes the payload bytes the buffer has and processes the frame once they are complete. A payload that
+     * is completely in the buffer is used where it was received, server frames are unmasked. Otherwise the
+     * bytes are collected in a pooled buffer until the rest arrives.
+     */
+    private void readPayload(WebsocketClient wsClient, ByteBuffer buffer) throws InvalidDataException {
+        int length = (int) payloadLength;
+        if (partialPayload == null) {
+            if (buffer.remaining() >= length) {
+                int payloadStart = buffer.position();
+                buffer.position(payloadStart + length);
+                completeFrame(wsClient, view(buffer, payloadStart, length));
+                return;
+            }
+            partialPayload = acquireLimited(length);
+        }
+        transfer(buffer, partialPayload, Math.min(buffer.remaining(), partialPayload.remaining()));
+        if (partialPayload.hasRemaining()) {
+            return;
+        }
+        try {
+            completeFrame(wsClient, view(partialPayload, 0, length));
+        } finally {
+            bufferPool.release(partialPayload);
+            partialPayload = null;
+        }
+    }
 
-        frame.isValid();
-        return frame;
+    /**
+     * @return read-only view of {@code length} bytes of the buffer from {@code offset}
+     */
+    private ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = bufferPool.view(buffer);
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
     }
 
+    /**
+     * Completes the received frame with its payload and processes it, the decoder then waits for the next frame
+     */
+    private void completeFrame(WebsocketClient wsClient, ByteBuffer payload) throws InvalidDataException {
+        state = DecoderState.OPCODE;
+        FramedataImpl1 frame = frameFor(frameOpcode);
+        frame.setFin(frameHeader < 0);
+        frame.setRSV1((frameHeader & 0x40) != 0);
+        frame.setRSV2((frameHeader & 0x20) != 0);
+        frame.setRSV3((frameHeader & 0x10) != 0);
+        frame.setPayload(payload);
+        try {
+            frame.isValid();
+            log.trace("matched frame: {}", frame);
+            processFrame(wsClient, frame);
+        } finally {
+            recycle(frame);
+        }
+    }
 
-    public int checkAlloc(int bytecount) throws InvalidDataException {
-        if (bytecount < 0) {
-            throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR, "Negative count");
+    /**
+     * @return the reused frame of the opcode, close frames are rare and parse their payload, they are new
+     */
+    private FramedataImpl1 frameFor(Opcode opcode) {
+        switch (opcode) {
+            case TEXT:
+                return textFrame;
+            case BINARY:
+                return binaryFrame;
+            case CONTINUOUS:
+                return continuousFrame;
+            case PING:
+                return pingFrame;
+            case PONG:
+                return pongFrame;
+            default:
+                return new CloseFrame();
         }
-        return bytecount;
     }
 
+    /**
+     * Lets go of the payload of a processed frame, it is part of a buffer that is reused
+     */
+    private void recycle(Framedata frame) {
+        ((FramedataImpl1) frame).setPayload(EMPTY);
+    }
 
     /**
-     * Translate the buffer depending when it has an extended payload length (126 or 127)
-     *
-     * @param buffer            the buffer to read from
-     * @param oldPayloadlength  the old payload length
-     * @param maxpacketsize     the max packet size allowed
-     * @param oldRealpacketsize the real packet size
-     * @return the new payload data containing new payload length and new packet size
-     * @throws IncompleteException    if the maxpacketsize is smaller than the realpackagesize
-     * @throws LimitExceededException if the payload length is to big
+     * Copies {@code length} bytes from the position of {@code source} without allocating a view of it
      */
-    private TranslatedPayloadMetaData translateSingleFramePayloadLength(ByteBuffer buffer,
-                                                                        int oldPayloadlength, int maxpacketsize, int oldRealpacketsize)
-            throws IncompleteException, LimitExceededException {
-        int payloadlength = oldPayloadlength;
-        int realpacketsize = oldRealpacketsize;
-        if (payloadlength == 126) {  //If 126, the following 2 bytes interpreted as a 16-bit unsigned integer are the payload length
-            realpacketsize += 2; // additional length bytes
-            validateResponsePacketSize(maxpacketsize, realpacketsize);
-            byte[] sizebytes = new byte[2];
-            sizebytes[0] = buffer.get(/*1 + 1*/);
-            sizebytes[1] = buffer.get(/*1 + 2*/);
-            payloadlength = new BigInteger(sizebytes).intValue();
-        } else {  //If 127, the following 8 bytes interpreted as a 64-bit unsigned integer
-            realpacketsize += 8; // additional length bytes
-            validateResponsePacketSize(maxpacketsize, realpacketsize);
-            byte[] bytes = new byte[8];
-            for (int i = 0; i < 8; i++) {
-                bytes[i] = buffer.get(/*1 + i*/);
-            }
-            long length = new BigInteger(bytes).longValue();
-            checkFrameLengthLimit(length);
-            payloadlength = (int) length;
+    private static void transfer(ByteBuffer source, ByteBuffer target, int length) {
+        int limit = source.limit();
+        source.limit(source.position() + length);
+        target.put(source);
+        source.limit(limit);
+    }
+
+
+    public int checkAlloc(int bytecount) throws InvalidDataException {
+        if (bytecount < 0) {
+            throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR, "Negative count");
         }
-        return new TranslatedPayloadMetaData(payloadlength, realpacketsize);
+        return bytecount;
     }
 
+
     /**
      * Check if the frame size exceeds the allowed limit
      *
@@ -231,21 +319,6 @@ public class Draft_6455 {
         }
     }
 
-    /**
-     * Check if the max packet size is smaller than the real packet size
-     *
-     * @param currentPacketSize the max packet size
-     * @param realPacketSize    the real packet size
-     * @throws IncompleteException if the maxpacketsize is smaller than the realpackagesize
-     */
-    private void validateResponsePacketSize(int currentPacketSize, int realPacketSize)
-            throws IncompleteException {
-        if (currentPacketSize < realPacketSize) {
-            log.trace("Incomplete frame: maxpacketsize < realpacketsize");
-            throw new IncompleteException(realPacketSize);
-        }
-    }
-
     /**
      * Get a byte that can set RSV bits when OR(|)'d. 0 1 2 3 4 5 6 7 +-+-+-+-+-------+ |F|R|R|R|
      * opcode| |I|S|S|S|  (4)  | |N|V|V|V|       | | |1|2|3|       |
@@ -286,64 +359,43 @@ public class Draft_6455 {
         return 8;
     }
 
-    public List<Framedata> translateFrame(ByteBuffer buffer) throws InvalidDataException {
-        List<Framedata> frames = new LinkedList<>();
-        Framedata cur;
-        if (incompleteframe != null) {
-            Framedata frame = completeFrame(buffer);
-            if (frame == null) { //didn't received enough bytes to finish frame
-                return Collections.emptyList();
-            }
-            frames.add(frame);
-        }
-
-        // Read as much as possible full frames
-        while (buffer.hasRemaining()) {
-            buffer.mark();
-            try {
-                cur = translateSingleFrame(buffer);
-                frames.add(cur);
-            } catch (IncompleteException e) {
-                // remember the incomplete data
-                buffer.reset();
-                int pref = e.getPreferredSize();
-                incompleteframe = ByteBuffer.allocate(checkAlloc(pref));
-                incompleteframe.put(buffer);
-                break;
+    /**
+     * Decodes the frames in the buffer and processes each of them as soon as it is complete. The decoder keeps
+     * its place in the frame header between calls, so frames may be split over reads anywhere. Payloads are
+     * read-only views of the received bytes, valid only while their frame is processed. Only the payload of a
+     * frame split over reads is copied, into a pooled buffer that is kept until the rest arrives.
+     *
+     * @param wsClient the websocket client the frames are processed for
+     * @param buffer   bytes read from the socket, consumed completely unless the connection was closed on the way
+     * @throws InvalidDataException if a frame is invalid
+     */
+    public void decode(WebsocketClient wsClient, ByteBuffer buffer) throws InvalidDataException {
+        while (buffer.hasRemaining() && wsClient.getReadyState().isOpen()) {
+            switch (state) {
+                case OPCODE:
+                    frameHeader = buffer.get();
+                    frameOpcode = toOpcode((byte) (frameHeader & 15));
+                    state = DecoderState.PAYLOAD_LENGTH;
+                    break;
+                case PAYLOAD_LENGTH:
+                    readPayloadLength(wsClient, buffer, buffer.get());
+                    break;
+                case EXTENDED_LENGTH:
+                    payloadLength = payloadLength << 8 | (buffer.get() & 0xFF);
+                    if (--lengthBytes == 0) {
+                        beginPayload(wsClient, buffer);
+                    }
+                    break;
+                default:
+                    readPayload(wsClient, buffer);
             }
         }
-        return frames;
     }
 
-    private Framedata completeFrame(ByteBuffer buffer) throws InvalidDataException {
-        Framedata frame = null;
-        try {
-            buffer.mark();
-            int availableNextByteCount = buffer.remaining();// The number of bytes received
-            int expectedNextByteCount = incompleteframe
-                    .remaining();// The number of bytes to complete the incomplete frame
-
-            if (expectedNextByteCount > availableNextByteCount) {
-                // did not receive enough bytes to complete the frame
-                incompleteframe.put(buffer.array(), buffer.position(), availableNextByteCount);
-                buffer.position(buffer.position() + availableNextByteCount);
-                return null;
-            }
-            incompleteframe.put(buffer.array(), buffer.position(), expectedNextByteCount);
-            buffer.position(buffer.position() + expectedNextByteCount);
-            frame = translateSingleFrame((ByteBuffer) incompleteframe.duplicate().position(0));
-            incompleteframe = null;
-        } catch (IncompleteException e) {
-            // extending as much as suggested
-            // case when payload length couldn't
-            ByteBuffer extendedframe = ByteBuffer.allocate(checkAlloc(e.getPreferredSize()));
-            assert (extendedframe.limit() > incompleteframe.limit());
-            incompleteframe.rewind();
-            extendedframe.put(incompleteframe);
-            incompleteframe = extendedframe;
-            completeFrame(buffer);
-        }
-        return frame;
+    private ByteBuffer acquireLimited(int size) {
+        ByteBuffer buffer = bufferPool.acquire(size);
+        buffer.limit(size);
+        return buffer;
     }
 
 
@@ -416,9 +468,11 @@ public class Draft_6455 {
             processFrameClosing(wsClient, frame);
         } else if (curop == Opcode.PONG) {
             wsClient.updateLastPong();
+        } else if (curop == Opcode.PING) {
+            wsClient.sendFrame(new PongFrame((PingFrame) frame));
         } else if (!frame.isFin() || curop == Opcode.CONTINUOUS) {
             processFrameContinuousAndNonFin(wsClient, frame, curop);
-        } else if (currentContinuousFrame != null) {
+        } else if (continuousOpcode != null) {
             log.error("Protocol error: Continuous frame sequence not completed.");
             throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR,
                     "Continuous frame sequence not completed.");
@@ -447,7 +501,7 @@ public class Draft_6455 {
             processFrameIsNotFin(frame);
         } else if (frame.isFin()) {
             processFrameIsFin(webSocketImpl, frame);
-        } else if (currentContinuousFrame == null) {
+        } else if (continuousOpcode == null) {
             log.error("Protocol error: Continuous frame sequence was not started.");
             throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR,
                     "Continuous frame sequence was not started.");
@@ -458,8 +512,8 @@ public class Draft_6455 {
             throw new InvalidDataException(CloseFrame.NO_UTF8);
         }
         //Checking if the current continuous frame contains a correct payload with the other frames combined
-        if (curop == Opcode.CONTINUOUS && currentContinuousFrame != null) {
-            addToBufferList(frame.getPayloadData());
+        if (curop == Opcode.CONTINUOUS && continuousOpcode != null) {
+            addToContinuousPayload(frame.getPayloadData());
         }
     }
 
@@ -480,14 +534,31 @@ public class Draft_6455 {
 
     private void processFrameText(WebsocketClient wsClient, Framedata frame) throws InvalidDataException {
         try {
-            wsClient.onWebsocketMessage(Charsetfunctions.stringUtf8(frame.getPayloadData()));
+            deliverText(wsClient, frame.getPayloadData());
         } catch (RuntimeException e) {
             logRuntimeException(wsClient, e);
         }
     }
 
     /**
-     * Process the frame if it is the last frame
+     * Hands a complete text payload to the client, as bytes if it consumes bytes, otherwise decoded.
+     * The payload was checked to be UTF-8 when its frame was validated.
+     *
+     * @param wsClient the websocket client
+     * @param payload  the payload of the whole message
+     * @throws InvalidDataException if the payload is not valid UTF-8
+     */
+    private void deliverText(WebsocketClient wsClient, ByteBuffer payload) throws InvalidDataException {
+        if (wsClient.isTextBytesConsumer()) {
+            wsClient.onWebsocketTextBytes(payload);
+        } else {
+            wsClient.onWebsocketMessage(Charsetfunctions.stringUtf8(payload));
+        }
+    }
+
+    /**
+     * Process the frame if it is the last frame. The reassembled message is handed out as a read-only view of
+     * its pooled buffer, like the payload of a message received in one frame.
      *
      * @param wsClient the websocket impl
      * @param frame    the frame
@@ -495,32 +566,28 @@ public class Draft_6455 {
      */
     private void processFrameIsFin(WebsocketClient wsClient, Framedata frame)
             throws InvalidDataException {
-        if (currentContinuousFrame == null) {
+        if (continuousOpcode == null) {
             log.trace("Protocol error: Previous continuous frame sequence not completed.");
             throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR,
                     "Continuous frame sequence was not started.");
         }
-        addToBufferList(frame.getPayloadData());
-        checkBufferLimit();
-        if (currentContinuousFrame.getOpcode() == Opcode.TEXT) {
-            ((FramedataImpl1) currentContinuousFrame).setPayload(getPayloadFromByteBufferList());
-            ((FramedataImpl1) currentContinuousFrame).isValid();
-            try {
-                wsClient.onWebsocketMessage(Charsetfunctions.stringUtf8(currentContinuousFrame.getPayloadData()));
-            } catch (RuntimeException e) {
-                logRuntimeException(wsClient, e);
-            }
-        } else if (currentContinuousFrame.getOpcode() == Opcode.BINARY) {
-            ((FramedataImpl1) currentContinuousFrame).setPayload(getPayloadFromByteBufferList());
-            ((FramedataImpl1) currentContinuousFrame).isValid();
-            try {
-                wsClient.onWebsocketMessage(currentContinuousFrame.getPayloadData());
-            } catch (RuntimeException e) {
-                logRuntimeException(wsClient, e);
+        addToContinuousPayload(frame.getPayloadData());
+        FramedataImpl1 message = continuousOpcode == Opcode.TEXT ? textFrame : binaryFrame;
+        message.setPayload(view(continuousPayload, 0, continuousPayload.position()));
+        try {
+            message.isValid();
+            if (continuousOpcode == Opcode.TEXT) {
+                deliverText(wsClient, message.getPayloadData());
+            } else {
+                wsClient.onWebsocketMessage(message.getPayloadData());
             }
+        } catch (RuntimeException e) {
+            logRuntimeException(wsClient, e);
+        } finally {
+            message.setPayload(EMPTY);
+            continuousOpcode = null;
+            clearContinuousPayload();
         }
-        currentContinuousFrame = null;
-        clearBufferList();
     }
 
     /**
@@ -530,14 +597,13 @@ public class Draft_6455 {
      * @throws InvalidDataException if there is a protocol error
      */
     private void processFrameIsNotFin(Framedata frame) throws InvalidDataException {
-        if (currentContinuousFrame != null) {
+        if (continuousOpcode != null) {
             log.trace("Protocol error: Previous continuous frame sequence not completed.");
             throw new InvalidDataException(CloseFrame.PROTOCOL_ERROR,
                     "Previous continuous frame sequence not completed.");
         }
-        currentContinuousFrame = frame;
-        addToBufferList(frame.getPayloadData());
-        checkBufferLimit();
+        continuousOpcode = frame.getOpcode();
+        addToContinuousPayload(frame.getPayloadData());
     }
 
 
@@ -552,38 +618,42 @@ public class Draft_6455 {
     }
 
     /**
-     * Clear the current bytebuffer list
+     * Return the payload of the current continuous frame to the pool
      */
-    private void clearBufferList() {
-        synchronized (byteBufferList) {
-            byteBufferList.clear();
+    private void clearContinuousPayload() {
+        if (continuousPayload != null) {
+            bufferPool.release(continuousPayload);
+            continuousPayload = null;
         }
     }
 
     /**
-     * Add a payload to the current bytebuffer list
+     * Append a fragment to the payload of the current continuous frame, moving it to a bigger pooled buffer
+     * when it is full. The fragment keeps its position.
      *
-     * @param payloadData the new payload
+     * @param payloadData the payload of the fragment
+     * @throws LimitExceededException if the message gets bigger than the allowed frame size
      */
-    private void addToBufferList(ByteBuffer payloadData) {
-        synchronized (byteBufferList) {
-            byteBufferList.add(payloadData);
-        }
-    }
-
-    /**
-     * Check the current size of the buffer and throw an exception if the size is bigger than the max
-     * allowed frame size
-     *
-     * @throws LimitExceededException if the current size is bigger than the allowed size
-     */
-    private void checkBufferLimit() throws LimitExceededException {
-        long totalSize = getByteBufferListSize();
+    private void addToContinuousPayload(ByteBuffer payloadData) throws LimitExceededException {
+        int currentSize = continuousPayload == null ? 0 : continuousPayload.position();
+        long totalSize = (long) currentSize + payloadData.remaining();
         if (totalSize > maxFrameSize) {
-            clearBufferList();
+            clearContinuousPayload();
             log.trace("Payload limit reached. Allowed: {} Current: {}", maxFrameSize, totalSize);
             throw new LimitExceededException(maxFrameSize);
         }
+        if (continuousPayload == null || continuousPayload.remaining() < payloadData.remaining()) {
+            ByteBuffer grown = bufferPool.acquire((int) Math.min(maxFrameSize, Math.max(totalSize, 2L * currentSize)));
+            if (continuousPayload != null) {
+                continuousPayload.flip();
+                grown.put(continuousPayload);
+                bufferPool.release(continuousPayload);
+            }
+            continuousPayload = grown;
+        }
+        int position = payloadData.position();
+        continuousPayload.put(payloadData);
+        payloadData.position(position);
     }
 
 
@@ -601,65 +671,23 @@ public class Draft_6455 {
         return maxFrameSize == that.getMaxFrameSize();
     }
 
-    public void reset() {
-        incompleteframe = null;
-    }
-
     /**
-     * Method to generate a full bytebuffer out of all the fragmented frame payload
-     *
-     * @return a bytebuffer containing all the data
-     * @throws LimitExceededException will be thrown when the totalSize is bigger then
-     *                                Integer.MAX_VALUE due to not being able to allocate more
+     * Drops a partially received frame or message and returns its buffers to the pool
      */
-    private ByteBuffer getPayloadFromByteBufferList() throws LimitExceededException {
-        long totalSize = 0;
-        ByteBuffer resultingByteBuffer;
-        synchronized (byteBufferList) {
-            for (ByteBuffer buffer : byteBufferList) {
-                totalSize += buffer.limit();
-            }
-            checkBufferLimit();
-            resultingByteBuffer = ByteBuffer.allocate((int) totalSize);
-            for (ByteBuffer buffer : byteBufferList) {
-                resultingByteBuffer.put(buffer);
-            }
+    public void reset() {
+        if (partialPayload != null) {
+            bufferPool.release(partialPayload);
+            partialPayload = null;
         }
-        resultingByteBuffer.flip();
-        return resultingByteBuffer;
+        state = DecoderState.OPCODE;
+        continuousOpcode = null;
+        clearContinuousPayload();
     }
 
     /**
-     * Get the current size of the resulting bytebuffer in the bytebuffer list
-     *
-     * @return the size as long (to not get an integer overflow)
+     * Part of a frame the decoder reads next
      */
-    private long getByteBufferListSize() {
-        long totalSize = 0;
-        synchronized (byteBufferList) {
-            for (ByteBuffer buffer : byteBufferList) {
-                totalSize += buffer.limit();
-            }
-        }
-        return totalSize;
-    }
-
-    private static class TranslatedPayloadMetaData {
-
-        private final int payloadLength;
-        private final int realPackageSize;
-
-        private int getPayloadLength() {
-            return payloadLength;
-        }
-
-        private int getRealPackageSize() {
-            return realPackageSize;
-        }
-
-        TranslatedPayloadMetaData(int newPayloadLength, int newRealPackageSize) {
-            this.payloadLength = newPayloadLength;
-            this.realPackageSize = newRealPackageSize;
-        }
+    private enum DecoderState {
+        OPCODE, PAYLOAD_LENGTH, EXTENDED_LENGTH, PAYLOAD
     }
 }
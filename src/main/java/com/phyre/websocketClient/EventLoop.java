@@ -0,0 +1,136 @@
+package com.phyre.websocketClient;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One thread driving the non-blocking sockets of any number of {@link WebsocketClient}s through a single
+ * {@link Selector}. Connecting, reading, decoding and the message callbacks of all its clients run on this
+ * thread, other threads hand work over with {@link #execute(Runnable)}.
+ */
+@Slf4j
+public class EventLoop implements Runnable {
+    /**
+     * Size of read buffers, holds the largest TLS record as well as its plaintext
+     */
+    static final int BUFFER_SIZE = 32 * 1024;
+    /**
+     * Largest pooled buffer, payloads of bigger frames are allocated for one use
+     */
+    static final int MAX_POOLED_SIZE = 4 * 1024 * 1024;
+    static final int MAX_POOLED_BYTES = 1024 * 1024;
+
+    private final String name;
+    private final Selector selector;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_SIZE, MAX_POOLED_BYTES);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public EventLoop(String name) {
+        this.name = name;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open selector of " + name, e);
+        }
+    }
+
+    /**
+     * Starts the loop thread, later calls return the running thread
+     */
+    public synchronized Thread start() {
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.start();
+        }
+        return thread;
+    }
+
+    /**
+     * Stops the loop, connections still registered are closed by the loop thread before it ends
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Runs a task on the loop thread, tasks run in the order they were handed over
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * @return pool of read, TLS and frame buffers, use it from the loop thread only
+     */
+    BufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                runTasks();
+                selector.select(this::handle);
+            }
+        } catch (IOException e) {
+            log.error("Selector of {} failed", name, e);
+        } finally {
+            runTasks();
+            for (SelectionKey key : selector.keys()) {
+                ((WebsocketClient) key.attachment()).close("Event loop stopped");
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn("Could not close selector of {}", name, e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        WebsocketClient client = (WebsocketClient) key.attachment();
+        try {
+            client.handle(key);
+        } catch (RuntimeException e) {
+            log.error("Unhandled error of a connection on {}", name, e);
+            client.close(e.getMessage());
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Task on {} failed", name, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,264 @@
+package com.phyre.websocketClient;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TLS over a non-blocking socket with an {@link SSLEngine}, driven by the {@link EventLoop} thread only.
+ * <p>
+ * Encrypted bytes live in buffers of the loop {@link BufferPool}, held only while a partial record is waiting
+ * for the rest of its bytes or the socket can't take more output. Received records are decrypted straight into
+ * the buffer the frame decoder reads.
+ */
+@Slf4j
+final class TlsChannel {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    /**
+     * Session ID of the last handshake with every host and port, a resumed session keeps the ID it was cached with
+     */
+    private static final Map<String, byte[]> LAST_SESSION_IDS = new ConcurrentHashMap<>();
+    private static SSLContext defaultContext;
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final BufferPool pool;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    /**
+     * Set when decrypted records did not fit the application buffer and wait in netIn
+     */
+    private boolean inputPending;
+    private final String peer;
+    private byte[] previousSessionId;
+
+    /**
+     * @param host host name sent for SNI and verified against the server certificate, it also keys the session
+     *             cache of the context together with the port
+     */
+    TlsChannel(SocketChannel channel, SSLContext context, String host, int port, BufferPool pool) {
+        this.channel = channel;
+        this.pool = pool;
+        this.peer = host + ":" + port;
+        this.engine = context.createSSLEngine(host, port);
+        this.engine.setUseClientMode(true);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        this.engine.setSSLParameters(parameters);
+        int needed = Math.max(engine.getSession().getPacketBufferSize(), engine.getSession().getApplicationBufferSize());
+        if (needed > pool.getDefaultSize()) {
+            throw new IllegalStateException("TLS records need buffers of " + needed + " bytes, the pool has "
+                    + pool.getDefaultSize());
+        }
+    }
+
+    /**
+     * Context shared by all connections. Its session cache lets a new connection to the same host and port
+     * resume the TLS session of an earlier one instead of running a full handshake.
+     */
+    static synchronized SSLContext defaultContext() throws NoSuchAlgorithmException, KeyManagementException {
+        if (defaultContext == null) {
+            SSLContext context = SSLContext.getInstance("TLSv1.2");
+            context.init(null, null, null);
+            defaultContext = context;
+        }
+        return defaultContext;
+    }
+
+    /**
+     * Sends the client hello, the rest of the handshake happens while reading
+     */
+    void beginHandshake() throws IOException {
+        previousSessionId = LAST_SESSION_IDS.get(peer);
+        engine.beginHandshake();
+        progress();
+    }
+
+    boolean isHandshaking() {
+        return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    /**
+     * Remembers the session of the finished handshake for the next connection to the same host and port
+     *
+     * @return true if the session has the ID of the one the previous connection to the host and port ended its
+     * handshake with, the server resumed it
+     */
+    boolean recordSession() {
+        byte[] sessionId = engine.getSession().getId();
+        if (sessionId.length == 0) {
+            return false; // the server doesn't cache sessions
+        }
+        LAST_SESSION_IDS.put(peer, sessionId);
+        return Arrays.equals(sessionId, previousSessionId);
+    }
+
+    /**
+     * Reads what the socket has and decrypts it into {@code app}, handshake records are handled on the way
+     *
+     * @param app buffer in fill mode, the decrypted bytes are appended
+     * @return number of decrypted bytes, -1 once the connection is closed
+     */
+    int read(ByteBuffer app) throws IOException {
+        if (netIn == null) {
+            netIn = pool.acquire();
+        }
+        int readBytes = channel.read(netIn);
+        int produced = 0;
+        inputPending = false;
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining()) {
+                SSLEngineResult result = engine.unwrap(netIn, app);
+                produced += result.bytesProduced();
+                if (result.getStatus() == Status.CLOSED) {
+                    return produced > 0 ? produced : -1;
+                } else if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+                    inputPending = true;
+                    break;
+                } else if (result.getStatus() == Status.BUFFER_UNDERFLOW) {
+                    break; // rest of the record is still on its way
+                }
+                progress();
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    break;
+                }
+            }
+        } finally {
+            netIn.compact();
+            if (netIn.position() == 0) {
+                pool.release(netIn);
+                netIn = null;
+            }
+        }
+        return readBytes == -1 && produced == 0 ? -1 : produced;
+    }
+
+    /**
+     * @return true if complete records are left over because the last application buffer was full,
+     * they are decrypted by the next {@link #read(ByteBuffer)}
+     */
+    boolean hasPendingInput() {
+        return inputPending;
+    }
+
+    /**
+     * Encrypts and writes application data
+     *
+     * @return true if all of it was written, false if the socket is backed up and the rest waits until it is
+     * writable again
+     */
+    boolean write(ByteBuffer app) throws IOException {
+        if (!flush()) {
+            return false;
+        }
+        while (app.hasRemaining()) {
+            if (!wrap(app) || netOut != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes encrypted bytes left over from earlier writes and continues a handshake that waited for it
+     *
+     * @return true if nothing is left to write
+     */
+    boolean flush() throws IOException {
+        if (netOut == null) {
+            return true;
+        }
+        netOut.flip();
+        channel.write(netOut);
+        netOut.compact();
+        if (netOut.position() > 0) {
+            return false;
+        }
+        pool.release(netOut);
+        netOut = null;
+        progress();
+        return netOut == null;
+    }
+
+    boolean hasPendingOutput() {
+        return netOut != null;
+    }
+
+    /**
+     * Sends close_notify as far as the socket takes it and returns the buffers to the pool
+     */
+    void close() {
+        engine.closeOutbound();
+        try {
+            wrap(EMPTY);
+        } catch (IOException e) {
+            log.trace("Could not send close_notify", e);
+        }
+        if (netIn != null) {
+            pool.release(netIn);
+            netIn = null;
+        }
+        if (netOut != null) {
+            pool.release(netOut);
+            netOut = null;
+        }
+    }
+
+    /**
+     * Runs the handshake steps that need no input from the server
+     */
+    private void progress() throws IOException {
+        while (true) {
+            HandshakeStatus status = engine.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+            } else if (status == HandshakeStatus.NEED_WRAP) {
+                if (!wrap(EMPTY)) {
+                    return; // continued by flush once the socket is writable
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encrypts into netOut and writes as much as the socket takes
+     *
+     * @return false if netOut had no room left because the socket is backed up
+     */
+    private boolean wrap(ByteBuffer app) throws IOException {
+        if (netOut == null) {
+            netOut = pool.acquire();
+        }
+        SSLEngineResult result = engine.wrap(app, netOut);
+        if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+            return false;
+        }
+        netOut.flip();
+        channel.write(netOut);
+        netOut.compact();
+        if (netOut.position() == 0) {
+            pool.release(netOut);
+            netOut = null;
+        }
+        return true;
+    }
+}
@@ -12,86 +12,261 @@ import com.phyre.websocketClient.handshake.ServerHandshake;
 import com.phyre.websocketClient.util.GeneralUtils;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.*;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * WebSocket client connection.
+ * <p>
+ * Connections are non-blocking sockets driven by an {@link EventLoop}, which may be shared by many clients so
+ * they all run on one thread. {@code wss://} runs TLS on an {@link javax.net.ssl.SSLEngine} on the same loop.
+ */
 @Slf4j
-public class WebsocketClient implements Runnable {
+public class WebsocketClient {
     private final URI uri;
-    private final Integer port = null;
-    private Socket socket = null;
-    private OutputStream oStream;
-    private InputStream iStream;
-    private final Draft_6455 draft = new Draft_6455();
+    private final EventLoop eventLoop;
+    private final boolean ownsEventLoop;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLContext sslContext;
+    private TlsChannel tls;
+    /**
+     * Frames waiting for the non-blocking socket to accept them, guarded by synchronizeWriteObject
+     */
+    private final ArrayDeque<ByteBuffer> outgoing = new ArrayDeque<>();
+    private boolean connecting;
+    private volatile boolean closed;
+    private final Draft_6455 draft;
     private final Handshaker handshaker = new Handshaker();
     private ClientHandshake clientHandshake;
     private ReadyState readyState = ReadyState.NOT_YET_CONNECTED;
     private final Object synchronizeWriteObject = new Object();
     private long lastPong = System.nanoTime();
-    private Thread connectReadThread;
-    public static final int RCVBUF = 16384;
     private BiConsumer<ClientHandshake, ServerHandshake> onOpen;
     private Consumer<String> onTextMessage;
+    private Consumer<ByteBuffer> onTextBytes;
     private Consumer<ByteBuffer> onBlobMessage;
     private Consumer<Exception> onError;
     private Consumer<String> onClose;
 
 
+    /**
+     * Creates a client running on an event loop of its own, which is stopped when the client closes
+     */
     public WebsocketClient(String uri) throws URISyntaxException {
+        this(uri, null);
+    }
+
+    /**
+     * @param eventLoop loop shared with other clients, it stays running when this client closes
+     */
+    public WebsocketClient(String uri, EventLoop eventLoop) throws URISyntaxException {
         this.uri = new URI(uri);
+        this.ownsEventLoop = eventLoop == null;
+        this.eventLoop = eventLoop != null ? eventLoop : new EventLoop("WebSocketEventLoop-" + this.uri.getHost());
+        this.draft = new Draft_6455(this.eventLoop.bufferPool());
+    }
+
+    /**
+     * Sets the context {@code wss://} connections are made with, must be called before {@link #connect()}.
+     * By default all clients share one context, so reconnects to a host resume its TLS session.
+     */
+    public void setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
     }
 
+    /**
+     * Starts connecting in the background
+     *
+     * @return event loop thread the connection runs on
+     */
     public Thread connect() {
-        if (this.connectReadThread != null) {
+        if (this.connecting) {
             throw new IllegalStateException("WebSocketClient objects are not reuseable");
-        } else {
-            log.info("Socket client connected");
-            this.connectReadThread = new Thread(this);
-            this.connectReadThread.setName("WebSocketConnectReadThread-" + this.connectReadThread.getId());
-            this.connectReadThread.start();
-            return this.connectReadThread;
         }
+        this.connecting = true;
+        eventLoop.execute(this::openChannel);
+        return eventLoop.start();
     }
 
-
-    @Override
-    public void run() {
+    /**
+     * Opens the non-blocking socket and registers it with the event loop, runs on the loop thread
+     */
+    private void openChannel() {
         try {
-            prepareSocket();
-        } catch (Exception e) {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = channel.register(eventLoop.selector(), 0, this);
+            if (isSSL()) {
+                tls = new TlsChannel(channel, sslContext != null ? sslContext : TlsChannel.defaultContext(),
+                        uri.getHost(), getPort(), eventLoop.bufferPool());
+            }
+            if (channel.connect(new InetSocketAddress(uri.getHost(), getPort()))) {
+                finishConnect();
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
             log.error("error during websocket connection");
             onError(e);
-            onClose(e.getMessage());
+            close(e.getMessage());
+        }
+    }
+
+    /**
+     * Handles the ready operations of the socket, called by the event loop
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                finishConnect();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                readChannel();
+            }
+            if (key.isValid()) {
+                updateInterestOps();
+            }
+        } catch (IOException e) {
+            log.warn("Error on socket connection");
+            onError(e);
+            close(e.getMessage());
+        }
+    }
+
+    private void finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            log.info("Socket client connected");
+            key.interestOps(SelectionKey.OP_READ);
+            if (tls != null) {
+                tls.beginHandshake();
+                tlsProgressed();
+            } else {
+                sendHandshake();
+            }
         }
-        readIncoming();
     }
 
+    /**
+     * Sends the websocket handshake once the TLS handshake is done
+     */
+    private void tlsProgressed() {
+        if (clientHandshake == null && !tls.isHandshaking()) {
+            log.info("TLS session with {} {}", uri.getHost(), tls.recordSession() ? "resumed" : "established");
+            sendHandshake();
+        }
+    }
+
+    /**
+     * Reads what the socket has into a pooled buffer and decodes it. The buffer goes back to the pool right
+     * after, the decoder keeps its own copy of a frame that isn't complete yet.
+     */
+    private void readChannel() throws IOException {
+        BufferPool pool = eventLoop.bufferPool();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            do {
+                int readBytes = tls != null ? tls.read(buffer) : channel.read(buffer);
+                if (readBytes == -1) {
+                    close("Connection closed by server");
+                    return;
+                }
+                if (tls != null) {
+                    tlsProgressed();
+                }
+                if (buffer.position() == 0) {
+                    return;
+                }
+                buffer.flip();
+                decode(buffer);
+                buffer.clear();
+            } while (tls != null && tls.hasPendingInput() && !closed);
+        } catch (InvalidHandshakeException e) {
+            log.error("Invalid handshake", e);
+            onError(e);
+            close("Invalid handshake");
+            return;
+        } finally {
+            pool.release(buffer);
+        }
+        if (readyState.isClosing() || readyState.isClosed()) {
+            close("Client action");
+        }
+    }
 
-    private void prepareSocket() throws NoSuchAlgorithmException, IOException, KeyManagementException {
-        socket = new Socket(Proxy.NO_PROXY);
-        InetSocketAddress addr = new InetSocketAddress(InetAddress.getByName(uri.getHost()), getPort());
-        socket.connect(addr, 0);
+    private void flushOutgoing() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            onError(e);
+            close(e.getMessage());
+        }
+    }
 
-        if (isSSL()) {
-            upgradeSocketToSSL();
+    /**
+     * Writes queued frames until the socket stops accepting them, the rest is written once it is writable
+     */
+    private void flush() throws IOException {
+        if (tls != null) {
+            if (!tls.flush()) {
+                return;
+            }
+            tlsProgressed();
+        }
+        synchronized (synchronizeWriteObject) {
+            while (!outgoing.isEmpty()) {
+                ByteBuffer buffer = outgoing.peek();
+                if (tls != null) {
+                    if (!tls.write(buffer)) {
+                        break;
+                    }
+                } else {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                }
+                outgoing.poll();
+            }
+            updateInterestOps();
         }
-        iStream = socket.getInputStream();
-        oStream = socket.getOutputStream();
-        sendHandshake();
+    }
 
+    /**
+     * Asks for writability only while output is backed up
+     */
+    private void updateInterestOps() {
+        boolean pending;
+        synchronized (synchronizeWriteObject) {
+            pending = !outgoing.isEmpty() || tls != null && tls.hasPendingOutput();
+        }
+        if (key.isValid() && key.interestOps() != SelectionKey.OP_CONNECT) {
+            key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
     }
 
+
     public void send(String text) {
         if (text == null) {
             throw new IllegalArgumentException("Cannot send 'null' data to a WebSocketImpl.");
@@ -99,6 +274,13 @@ public class WebsocketClient implements Runnable {
         send(draft.createFrames(text));
     }
 
+    /**
+     * Sends a single frame, its payload is copied before this returns
+     */
+    void sendFrame(Framedata frame) {
+        send(Collections.singletonList(frame));
+    }
+
     private void send(Collection<Framedata> frames) {
         if (!readyState.isOpen()) {
             throw new WebsocketNotConnectedException();
@@ -106,13 +288,12 @@ public class WebsocketClient implements Runnable {
         if (frames == null) {
             throw new IllegalArgumentException();
         }
-        List<ByteBuffer> outgoingFrames = frames.stream()
-                .map(draft::createBinaryFrame)
-                .collect(Collectors.toList());
         for (Framedata f : frames) {
             log.trace("send frame: {}", f);
-            outgoingFrames.add(draft.createBinaryFrame(f));
         }
+        List<ByteBuffer> outgoingFrames = frames.stream()
+                .map(draft::createBinaryFrame)
+                .collect(Collectors.toList());
         write(outgoingFrames);
     }
 
@@ -124,24 +305,6 @@ public class WebsocketClient implements Runnable {
         }
     }
 
-    private void readIncoming() {
-        byte[] rawbuffer = new byte[RCVBUF];
-        int readBytes;
-        try {
-            while (!readyState.isClosing() && !readyState.isClosed() && (readBytes = iStream.read(rawbuffer)) != -1) {
-                decode(ByteBuffer.wrap(rawbuffer, 0, readBytes));
-            }
-        } catch (IOException | RuntimeException e) {
-            log.warn("Error while closing");
-            onError(e);
-        } catch (InvalidHandshakeException e) {
-            e.printStackTrace();
-        }
-        close("Client action");
-        connectReadThread = null;
-    }
-
-
     private void decode(ByteBuffer socketBuffer) throws InvalidHandshakeException {
         assert (socketBuffer.hasRemaining());
         if (readyState != ReadyState.NOT_YET_CONNECTED) {
@@ -153,6 +316,9 @@ public class WebsocketClient implements Runnable {
             if (serverHandshake.matched()) {
                 this.readyState = ReadyState.OPEN;
                 this.onWebsocketOpen(clientHandshake, serverHandshake);
+                if (socketBuffer.hasRemaining()) { // frames sent right behind the handshake
+                    decodeFrames(socketBuffer);
+                }
             } else {
                 throw new InvalidHandshakeException();
             }
@@ -160,13 +326,8 @@ public class WebsocketClient implements Runnable {
     }
 
     private void decodeFrames(ByteBuffer socketBuffer) {
-        List<Framedata> frames;
         try {
-            frames = draft.translateFrame(socketBuffer);
-            for (Framedata f : frames) {
-                log.trace("matched frame: {}", f);
-                draft.processFrame(this, f);
-            }
+            draft.decode(this, socketBuffer);
         } catch (LimitExceededException e) {
             if (e.getLimit() == Integer.MAX_VALUE) {
                 log.error("Closing due to invalid size of frame", e);
@@ -183,18 +344,9 @@ public class WebsocketClient implements Runnable {
         this.lastPong = System.nanoTime();
     }
 
-    private void upgradeSocketToSSL()
-            throws NoSuchAlgorithmException, KeyManagementException, IOException {
-        SSLSocketFactory factory;
-        SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-        sslContext.init(null, null, null);
-        factory = sslContext.getSocketFactory();
-        socket = factory.createSocket(socket, uri.getHost(), getPort(), true);
-    }
-
     private void sendHandshake() {
         String path = GeneralUtils.getUriPath(uri);
-        String host = uri.getHost() + (isDefaultPort() ? ":" + port : "");
+        String host = uri.getHost() + (isDefaultPort() ? ":" + getPort() : "");
 
         this.clientHandshake = handshaker.createClientHandshake(host, path);
         writeData(handshaker.toByteBuffer(this.clientHandshake));
@@ -202,34 +354,52 @@ public class WebsocketClient implements Runnable {
 
 
     private void writeData(ByteBuffer buffer) {
-        try {
-            oStream.write(buffer.array(), 0, buffer.limit());
-            oStream.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (synchronizeWriteObject) {
+            outgoing.add(buffer);
+        }
+        if (eventLoop.inEventLoop()) {
+            flushOutgoing();
+        } else {
+            eventLoop.execute(this::flushOutgoing);
         }
     }
 
+    /**
+     * Closes the connection on its event loop thread
+     */
     public void close() {
-        this.close("Stopped by client");
+        if (eventLoop.inEventLoop() || !connecting) {
+            this.close("Stopped by client");
+        } else {
+            eventLoop.execute(() -> close("Stopped by client"));
+        }
     }
+
     protected void close(String reason) {
+        if (closed) {
+            return;
+        }
+        closed = true;
         try {
             this.readyState = ReadyState.CLOSED;
             closeSocket();
             draft.reset();
-            oStream.close();
-            iStream.close();
             onClose(reason);
         } catch (Exception e) {
             onError(e);
         }
+        if (ownsEventLoop) {
+            eventLoop.stop();
+        }
     }
 
     private void closeSocket() {
         try {
-            if (socket != null) {
-                socket.close();
+            if (tls != null) {
+                tls.close();
+            }
+            if (channel != null) {
+                channel.close();
             }
         } catch (IOException ex) {
             onError(ex);
@@ -237,7 +407,9 @@ public class WebsocketClient implements Runnable {
     }
 
     public int getPort() {
-        if (isSSL()) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        } else if (isSSL()) {
             return Constants.DEFAULT_WSS_PORT;
         } else {
             return Constants.DEFAULT_PORT;
@@ -264,6 +436,10 @@ public class WebsocketClient implements Runnable {
         this.onOpen = onOpen;
     }
 
+    /**
+     * Receives binary messages. The payload is a read-only view of the receive buffer, only valid for the
+     * duration of the call and must be copied to be kept.
+     */
     public void onBlobMessage(Consumer<ByteBuffer> onMessage) {
         this.onBlobMessage = onMessage;
     }
@@ -272,6 +448,16 @@ public class WebsocketClient implements Runnable {
         this.onTextMessage = onMessage;
     }
 
+    /**
+     * Receives text messages as their raw UTF-8 payload instead of a decoded String. The payload is already
+     * validated. It is a read-only view of the receive buffer between its position and limit, only valid for the
+     * duration of the call and must be copied to be kept.
+     * When set, {@link #onMessage(Consumer)} is not called anymore.
+     */
+    public void onMessageBytes(Consumer<ByteBuffer> onMessage) {
+        this.onTextBytes = onMessage;
+    }
+
     public void onError(Consumer<Exception> onError) {
         this.onError = onError;
     }
@@ -285,7 +471,17 @@ public class WebsocketClient implements Runnable {
     }
 
     void onWebsocketMessage(String message) {
-        this.onTextMessage.accept(message);
+        if (this.onTextMessage != null) {
+            this.onTextMessage.accept(message);
+        }
+    }
+
+    boolean isTextBytesConsumer() {
+        return this.onTextBytes != null;
+    }
+
+    void onWebsocketTextBytes(ByteBuffer payload) {
+        this.onTextBytes.accept(payload);
     }
 
     void onWebsocketMessage(ByteBuffer blob) {
@@ -31,6 +31,7 @@ import com.phyre.websocketClient.exceptions.InvalidDataException;
 import com.phyre.websocketClient.util.ByteBufferUtils;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Abstract implementation of a frame
@@ -135,7 +136,7 @@ public abstract class FramedataImpl1 implements Framedata {
                 + ", rsv2:" + isRSV2() + ", rsv3:" + isRSV3() + ", payload length:[pos:" + unmaskedpayload
                 .position() + ", len:" + unmaskedpayload.remaining() + "], payload:" + (
                 unmaskedpayload.remaining() > 1000 ? "(too big to display)"
-                        : new String(unmaskedpayload.array())) + '}';
+                        : StandardCharsets.UTF_8.decode(unmaskedpayload.duplicate())) + '}';
     }
 
     /**
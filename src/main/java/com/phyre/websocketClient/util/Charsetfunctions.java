@@ -123,8 +123,8 @@ public class Charsetfunctions {
      * Using the algorithm "Flexible and Economical UTF-8 Decoder" by Björn Höhrmann
      * (http://bjoern.hoehrmann.de/utf-8/decoder/dfa/)
      *
-     * @param data the ByteBuffer
-     * @param off  offset (for performance reasons)
+     * @param data the ByteBuffer, checked from its position to its limit
+     * @param off  offset from the position (for performance reasons)
      * @return does the ByteBuffer contain a valid utf8 encoded string
      */
     public static boolean isValidUTF8(ByteBuffer data, int off) {
@@ -133,7 +133,7 @@ public class Charsetfunctions {
             return false;
         }
         int state = 0;
-        for (int i = off; i < len; ++i) {
+        for (int i = data.position() + off; i < data.limit(); ++i) {
             state = utf8d[256 + (state << 4) + utf8d[(0xff & data.get(i))]];
             if (state == 1) {
                 return false;
@@ -0,0 +1,155 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregatorTest {
+    private static final long BID = Instrument.BTC_USD.parsePrice("43195");
+    private static final long LOW_BID = Instrument.BTC_USD.parsePrice("43194");
+    private static final long ASK = Instrument.BTC_USD.parsePrice("43196");
+    private static final long AMOUNT = Instrument.BTC_USD.parseSize("0.5");
+
+    private OrderBook orderBook;
+    private Aggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        orderBook = new OrderBook(List.of(new BitfinexTest.RecordingBitfinex()));
+        aggregator = new Aggregator(orderBook, 1, WaitStrategy.BUSY_SPIN, 16);
+    }
+
+    @Test
+    void publishesOnlyFinishedMessagesOfInterleavedRings() {
+        LevelDeltaRing first = aggregator.newRing();
+        LevelDeltaRing second = aggregator.newRing();
+
+        first.offerLevel(0, Side.BID, BID, 0, AMOUNT);
+        second.offerLevel(0, Side.BID, LOW_BID, 0, AMOUNT);
+        first.offerLevel(0, Side.ASK, ASK, 0, AMOUNT);
+        first.offerCommit(0);
+        aggregator.drainRound();
+
+        BookSnapshot snapshot = orderBook.getSnapshot("BTC/USD");
+        assertEquals(1, snapshot.getBids().size());
+        assertEquals(BID, snapshot.getBestBid());
+        assertEquals(ASK, snapshot.getBestAsk());
+
+        second.offerLevel(0, Side.ASK, ASK, 0, AMOUNT);
+        second.offerCommit(0);
+        aggregator.drainRound();
+
+        snapshot = orderBook.getSnapshot("BTC/USD");
+        assertEquals(2, snapshot.getBids().size());
+        assertEquals(LOW_BID, snapshot.getBids().price(1));
+        assertEquals(2 * AMOUNT, snapshot.getAsks().amount(0));
+    }
+
+    @Test
+    void drainStopsAtLastCommitWithinLimit() {
+        LevelDeltaRing ring = aggregator.newRing();
+
+        ring.offerLevel(0, Side.BID, BID, 0, AMOUNT);
+        ring.offerCommit(0);
+        ring.offerLevel(0, Side.BID, BID, AMOUNT, 0);
+        ring.offerLevel(0, Side.BID, LOW_BID, 0, AMOUNT);
+        ring.offerLevel(0, Side.ASK, ASK, 0, AMOUNT);
+        ring.offerCommit(0);
+        ring.offerLevel(0, Side.ASK, ASK, AMOUNT, 0);
+
+        assertEquals(2, ring.drain(4));
+        assertEquals(4, ring.drain(2)); // longer than the limit, applied as a whole
+        assertEquals(0, ring.drain(4));
+    }
+
+    @Test
+    void drainsRingFilledByOneUnfinishedMessage() {
+        aggregator = new Aggregator(orderBook, 1, WaitStrategy.BUSY_SPIN, 4);
+        LevelDeltaRing ring = aggregator.newRing();
+
+        ring.offerLevel(0, Side.BID, BID, 0, AMOUNT);
+        ring.offerLevel(0, Side.BID, LOW_BID, 0, AMOUNT);
+        ring.offerLevel(0, Side.ASK, ASK, 0, AMOUNT);
+        assertEquals(0, ring.drain(16));
+
+        ring.offerLevel(0, Side.ASK, ASK, AMOUNT, 2 * AMOUNT);
+        assertEquals(4, ring.drain(16));
+
+        ring.offerCommit(0);
+        assertEquals(1, aggregator.drainRound());
+        assertEquals(2, orderBook.getSnapshot("BTC/USD").getBids().size());
+        assertEquals(2 * AMOUNT, orderBook.getBestAskAmount("BTC/USD"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(WaitStrategy.class)
+    void consolidatesFeedsThatOverrunTheRing(WaitStrategy waitStrategy) throws InterruptedException {
+        BitfinexTest.RecordingBitfinex first = new BitfinexTest.RecordingBitfinex();
+        BitfinexTest.RecordingBitfinex second = new BitfinexTest.RecordingBitfinex();
+        OrderBook orderBook = new OrderBook(List.of(first, second), 0, waitStrategy, 8);
+        orderBook.startAggregator();
+        try {
+            Thread firstFeed = new Thread(() -> feedRandomUpdates(first, 1));
+            Thread secondFeed = new Thread(() -> feedRandomUpdates(second, 2));
+            firstFeed.start();
+            secondFeed.start();
+            firstFeed.join();
+            secondFeed.join();
+
+            Map<Long, Long> bids = merge(first.getBook("BTC/USD").getSnapshot().getBids(),
+                    second.getBook("BTC/USD").getSnapshot().getBids());
+            Map<Long, Long> asks = merge(first.getBook("BTC/USD").getSnapshot().getAsks(),
+                    second.getBook("BTC/USD").getSnapshot().getAsks());
+            assertTrue(bids.size() > Bitfinex.BOOK_DEPTH);
+
+            BookSnapshot snapshot = OrderBookTest.await(orderBook, "BTC/USD",
+                    s -> levels(s.getBids()).equals(bids) && levels(s.getAsks()).equals(asks));
+
+            assertEquals(bids, levels(snapshot.getBids()));
+            assertEquals(asks, levels(snapshot.getAsks()));
+        } finally {
+            orderBook.stop();
+        }
+    }
+
+    /**
+     * Subscribes and sends a thousand single level updates, far more level deltas than the ring holds
+     */
+    private static void feedRandomUpdates(BitfinexTest.RecordingBitfinex bitfinex, long seed) {
+        Random random = new Random(seed);
+        bitfinex.receive(BitfinexTest.SUBSCRIBED);
+        bitfinex.receive("[17082,[[43000,1,1],[43100,1,-1]]]");
+        for (int i = 0; i < 1000; i++) {
+            boolean bid = random.nextBoolean();
+            int price = bid ? 43000 - random.nextInt(60) : 43100 + random.nextInt(60);
+            int count = random.nextInt(4);
+            double amount = (1 + random.nextInt(1000)) / 100.0;
+            bitfinex.receive("[17082,[" + price + "," + count + "," + (bid ? amount : -amount) + "]]");
+        }
+    }
+
+    private static Map<Long, Long> merge(BookSnapshot.Levels first, BookSnapshot.Levels second) {
+        Map<Long, Long> merged = levels(first);
+        for (int i = 0; i < second.size(); i++) {
+            merged.merge(second.price(i), second.amount(i), Long::sum);
+        }
+        return merged;
+    }
+
+    private static Map<Long, Long> levels(BookSnapshot.Levels levels) {
+        Map<Long, Long> result = new TreeMap<>();
+        for (int i = 0; i < levels.size(); i++) {
+            result.put(levels.price(i), levels.amount(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BitfinexChecksumTest {
+    /**
+     * 25 levels per side in the shape Bitfinex sends them. The checksum was computed with Bitfinex's reference
+     * algorithm, numbers printed by JavaScript's {@code Number.prototype.toString()}.
+     */
+    static final String SNAPSHOT_LEVELS = "[43250,3,1e-7],[43247,1,0.00012],[43246,3,0.25],[43245,5,3e-8],"
+            + "[43244,1,0.02],[43241,1,3e-8],[43240,5,0.02],[43239,5,0.00012],[43238,5,0.5],[43235,1,3e-8],"
+            + "[43234,5,0.0000005],[43233,3,0.02],[43232,5,0.00012],[43230,5,0.0000005],[43229,1,0.25],"
+            + "[43228,3,0.00012],[43227,5,0.5],[43226,4,0.001],[43223,3,3],[43220,3,0.0001],[43219,2,10.5],"
+            + "[43218,1,0.25],[43216,5,3],[43214,4,0.0001],[43213,1,0.00000123],"
+            + "[43251,2,-0.06],[43253,2,-0.75],[43258,4,-0.5],[43259,5,-0.25],[43261,3,-10.5],[43263,5,-3],"
+            + "[43268,1,-0.0000005],[43269,3,-3],[43270,1,-10.5],[43272,5,-0.001],[43277,3,-10.5],[43282,3,-0.5],"
+            + "[43287,3,-1e-7],[43288,4,-0.5],[43289,3,-1e-7],[43290,4,-0.02],[43295,1,-1e-7],"
+            + "[43300,4,-0.00000123],[43302,2,-0.0000005],[43307,5,-0.0001],[43312,3,-0.001],[43317,2,-1e-7],"
+            + "[43318,2,-1e-7],[43319,2,-0.5],[43324,5,-1e-7]";
+    static final int SNAPSHOT_CHECKSUM = 659315291;
+    /**
+     * Checksum after the best bid changed to {@code [43250,2,0.3]}
+     */
+    static final int UPDATE_CHECKSUM = -824257318;
+
+    @Test
+    void matchesChecksumOfReferenceSnapshot() {
+        PriceLadder bids = new PriceLadder(Side.BID, Instrument.BTC_USD.getTickSize());
+        PriceLadder asks = new PriceLadder(Side.ASK, Instrument.BTC_USD.getTickSize());
+        for (String level : SNAPSHOT_LEVELS.substring(1, SNAPSHOT_LEVELS.length() - 1).split("\\],\\[")) {
+            String[] fields = level.split(",");
+            long price = Instrument.BTC_USD.parsePrice(fields[0]);
+            long amount = Instrument.BTC_USD.parseSize(fields[2]);
+            if (amount > 0) {
+                bids.set(price, amount);
+            } else {
+                asks.set(price, -amount);
+            }
+        }
+        BitfinexChecksum checksum = new BitfinexChecksum(Instrument.BTC_USD);
+
+        assertEquals(SNAPSHOT_CHECKSUM, checksum.compute(bids, asks));
+
+        bids.set(Instrument.BTC_USD.parsePrice("43250"), Instrument.BTC_USD.parseSize("0.3"));
+        assertEquals(UPDATE_CHECKSUM, checksum.compute(bids, asks));
+    }
+
+    @Test
+    void interleavesBidsAndAsksUntilBothSidesEnd() {
+        Instrument instrument = new Instrument("BTC/USD", 2, 8);
+        PriceLadder bids = new PriceLadder(Side.BID, 1);
+        PriceLadder asks = new PriceLadder(Side.ASK, 1);
+        bids.set(4325050, 50000000);
+        bids.set(4324900, 200000000);
+        asks.set(4325100, 100000000);
+        asks.set(4325200, 25000000);
+        asks.set(4325300, 10);
+
+        int checksum = new BitfinexChecksum(instrument).compute(bids, asks);
+
+        assertEquals(crc("43250.5:0.5:43251:-1:43249:2:43252:-0.25:43253:-1e-7"), checksum);
+    }
+
+    @Test
+    void writesNumbersLikeJavaScript() {
+        assertNumber("0", 0, 8);
+        assertNumber("43250", 4325000000L, 5);
+        assertNumber("43250.1", 4325010000L, 5);
+        assertNumber("-0.5", -50000000, 8);
+        assertNumber("0.25", 25000000, 8);
+        assertNumber("0.000001", 100, 8);
+        assertNumber("0.00000123", 123, 8);
+        assertNumber("1e-7", 10, 8);
+        assertNumber("-1e-7", -10, 8);
+        assertNumber("1.5e-7", 15, 8);
+        assertNumber("1e-8", 1, 8);
+        assertNumber("1.2345e-10", 12345, 14);
+        assertNumber("100000000000000000000", 1, -20);
+        assertNumber("1e+21", 1, -21);
+        assertNumber("1.5e+21", 15, -20);
+    }
+
+    private static void assertNumber(String expected, long value, int scale) {
+        byte[] target = new byte[64];
+        int length = BitfinexChecksum.appendNumber(target, 0, value, scale);
+        assertEquals(expected, new String(target, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    private static int crc(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(StandardCharsets.US_ASCII));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,106 @@
+package com.phyre.exchange;
+
+import com.phyre.websocketClient.EventLoop;
+import org.junit.jupiter.api.Test;
+
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitfinexTest {
+    static final String SUBSCRIBED = "{\"event\":\"subscribed\",\"channel\":\"book\",\"chanId\":17082,"
+            + "\"symbol\":\"tBTCUSD\",\"prec\":\"P0\",\"freq\":\"F0\",\"len\":\"25\",\"pair\":\"BTCUSD\"}";
+
+    @Test
+    void verifiesChecksumsOfSnapshotAndUpdate() {
+        RecordingBitfinex bitfinex = new RecordingBitfinex();
+
+        bitfinex.receive(SUBSCRIBED);
+        bitfinex.receive("[17082,[" + BitfinexChecksumTest.SNAPSHOT_LEVELS + "]]");
+        bitfinex.receive("[17082,\"cs\"," + BitfinexChecksumTest.SNAPSHOT_CHECKSUM + "]");
+        bitfinex.receive("[17082,[43250,2,0.3]]");
+        bitfinex.receive("[17082,\"cs\"," + BitfinexChecksumTest.UPDATE_CHECKSUM + "]");
+
+        ExchangeBook book = bitfinex.getBook("BTC/USD");
+        assertEquals(0, bitfinex.getChecksumMismatches());
+        assertTrue(bitfinex.sent.isEmpty());
+        assertEquals(Instrument.BTC_USD.parsePrice("43250"), book.getBestBid());
+        assertEquals(Instrument.BTC_USD.parseSize("0.3"), book.getBestBidAmount());
+        assertEquals(Instrument.BTC_USD.parsePrice("43251"), book.getBestAsk());
+    }
+
+    @Test
+    void resubscribesOnChecksumMismatch() {
+        RecordingBitfinex bitfinex = new RecordingBitfinex();
+
+        bitfinex.receive(SUBSCRIBED);
+        bitfinex.receive("[17082,[" + BitfinexChecksumTest.SNAPSHOT_LEVELS + "]]");
+        bitfinex.receive("[17082,\"cs\"," + BitfinexChecksumTest.UPDATE_CHECKSUM + "]");
+
+        assertEquals(1, bitfinex.getChecksumMismatches());
+        assertEquals(2, bitfinex.sent.size());
+        assertTrue(bitfinex.sent.get(0).contains("\"unsubscribe\""));
+        assertTrue(bitfinex.sent.get(1).contains("\"subscribe\""));
+        assertEquals(0, bitfinex.getBook("BTC/USD").getBestBid());
+    }
+
+    @Test
+    void keepsBooksAtTheChecksumDepth() {
+        RecordingBitfinex bitfinex = new RecordingBitfinex();
+        new OrderBook(List.of(bitfinex), 10);
+
+        assertTrue(bitfinex.hasFixedDepth());
+        assertEquals(Bitfinex.BOOK_DEPTH, bitfinex.getMaxDepth());
+        assertEquals(Bitfinex.BOOK_DEPTH, bitfinex.getBook("BTC/USD").getMaxDepth());
+        assertThrows(IllegalStateException.class, () -> bitfinex.setMaxDepth(10));
+    }
+
+    @Test
+    void rejectsBookModeChangeAfterStart() throws URISyntaxException {
+        RecordingBitfinex bitfinex = new RecordingBitfinex() {
+            @Override
+            protected String getUri() {
+                return "ws://127.0.0.1:1"; // refused, the exchange counts as started anyway
+            }
+        };
+        bitfinex.setBookMode("BTC/USD", Bitfinex.Precision.P1, Bitfinex.Frequency.F0);
+        EventLoop eventLoop = new EventLoop("BitfinexTest");
+        try {
+            bitfinex.start(eventLoop);
+
+            assertThrows(IllegalStateException.class,
+                    () -> bitfinex.setBookMode("BTC/USD", Bitfinex.Precision.P0, Bitfinex.Frequency.F0));
+            assertEquals(Bitfinex.Precision.P1, bitfinex.getPrecision("BTC/USD"));
+            assertTrue(bitfinex.getBook("BTC/USD").isGrouped());
+        } finally {
+            bitfinex.stop();
+            eventLoop.stop();
+        }
+    }
+
+    /**
+     * Bitfinex fed by hand, messages it sends are recorded instead of going to a socket
+     */
+    static class RecordingBitfinex extends Bitfinex {
+        final List<String> sent = new ArrayList<>();
+
+        RecordingBitfinex(Instrument... instruments) {
+            super(instruments.length == 0 ? List.of(Instrument.BTC_USD) : List.of(instruments));
+        }
+
+        void receive(String message) {
+            onUpdateMessage(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        protected void send(String message) {
+            sent.add(message);
+        }
+    }
+}
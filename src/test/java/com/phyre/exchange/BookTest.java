@@ -0,0 +1,98 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookTest {
+    private Book book;
+    private List<String> levels;
+
+    @BeforeEach
+    void setUp() {
+        book = new Book(new Instrument("BTC/USD", 0, 0));
+        levels = new ArrayList<>();
+        book.onLevel((side, price, oldAmount, newAmount) -> levels.add(side + " " + price + " " + oldAmount
+                + "->" + newAmount));
+    }
+
+    @Test
+    void ignoresLevelWorseThanWorstAtMaxDepth() {
+        book.setMaxDepth(2);
+        book.set(Side.BID, 100, 1);
+        book.set(Side.BID, 99, 2);
+        levels.clear();
+
+        assertEquals(0, book.set(Side.BID, 98, 3));
+        assertEquals(0, book.set(Side.ASK, 101, 3)); // the other side still has room
+
+        assertEquals(0, book.get(Side.BID, 98));
+        assertEquals(2, book.getBids().size());
+        assertEquals(List.of("ASK 101 0->3"), levels);
+    }
+
+    @Test
+    void reportsLevelsPushedBeyondMaxDepthAsRemoved() {
+        book.setMaxDepth(2);
+        book.set(Side.ASK, 101, 1);
+        book.set(Side.ASK, 102, 2);
+        levels.clear();
+
+        book.set(Side.ASK, 100, 3);
+
+        assertEquals(List.of("ASK 100 0->3", "ASK 102 2->0"), levels);
+        assertEquals(0, book.get(Side.ASK, 102));
+        assertEquals(100, book.getBestAsk());
+        assertEquals(2, book.getAsks().size());
+    }
+
+    @Test
+    void updatesLevelWithinMaxDepthInPlace() {
+        book.setMaxDepth(2);
+        book.set(Side.BID, 100, 1);
+        book.set(Side.BID, 99, 2);
+        levels.clear();
+
+        assertEquals(2, book.set(Side.BID, 99, 5));
+        assertEquals(1, book.set(Side.BID, 100, 0));
+        book.set(Side.BID, 98, 4); // room again after the removal
+
+        assertEquals(List.of("BID 99 2->5", "BID 100 1->0", "BID 98 0->4"), levels);
+    }
+
+    @Test
+    void setMaxDepthPrunesExistingBook() {
+        for (int i = 0; i < 5; i++) {
+            book.set(Side.BID, 100 - i, 1 + i);
+            book.set(Side.ASK, 101 + i, 1 + i);
+        }
+        levels.clear();
+
+        book.setMaxDepth(3);
+
+        assertEquals(List.of("BID 96 5->0", "BID 97 4->0", "ASK 105 5->0", "ASK 104 4->0"), levels);
+        assertEquals(3, book.getBids().size());
+        assertEquals(3, book.getAsks().size());
+        assertEquals(100, book.getBestBid());
+        assertEquals(101, book.getBestAsk());
+        assertEquals(3, book.publishSnapshot(Integer.MAX_VALUE).getBids().size());
+    }
+
+    @Test
+    void zeroMaxDepthRemovesTheLimit() {
+        book.setMaxDepth(1);
+        book.set(Side.BID, 100, 1);
+        book.setMaxDepth(0);
+
+        book.set(Side.BID, 99, 1);
+        book.set(Side.BID, 98, 1);
+
+        assertEquals(3, book.getBids().size());
+        assertTrue(levels.stream().noneMatch(level -> level.endsWith("->0")));
+    }
+}
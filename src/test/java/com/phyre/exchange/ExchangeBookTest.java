@@ -0,0 +1,194 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExchangeBookTest {
+    private static final Instrument INSTRUMENT = new Instrument("BTC/USD", 0, 0);
+
+    private final List<String> levels = new ArrayList<>();
+    private int updates;
+    private int bbos;
+
+    @Test
+    void publishesOneUpdateAndOneBboPerMessage() {
+        ExchangeBook book = book(0);
+        BookSnapshot before = book.getSnapshot();
+
+        book.beginUpdate();
+        book.update(Side.BID, 100, 1);
+        book.update(Side.BID, 99, 2);
+        book.update(Side.ASK, 102, 1);
+        book.update(Side.ASK, 101, 3);
+        assertEquals(0, updates);
+        assertEquals(0, bbos);
+        book.commitUpdate();
+
+        assertEquals(1, updates);
+        assertEquals(1, bbos);
+        assertEquals(4, levels.size());
+        assertEquals(before.getSequence() + 1, book.getSnapshot().getSequence());
+        assertEquals(101, book.getBestAsk());
+        assertEquals(3, book.getBestAskAmount());
+    }
+
+    @Test
+    void nestedUpdatesPublishAtTheOutermostCommit() {
+        ExchangeBook book = book(0);
+
+        book.beginUpdate();
+        book.update(Side.BID, 100, 1);
+        book.beginUpdate();
+        book.update(Side.ASK, 101, 1);
+        book.commitUpdate();
+        assertTrue(book.isUpdating());
+        assertEquals(0, updates);
+        book.update(Side.BID, 100, 2);
+        book.commitUpdate();
+
+        assertFalse(book.isUpdating());
+        assertEquals(1, updates);
+        assertEquals(1, bbos);
+        assertEquals(2, book.getBestBidAmount());
+    }
+
+    @Test
+    void messageWithoutChangesPublishesNothing() {
+        ExchangeBook book = book(0);
+        book.update(Side.BID, 100, 1);
+        BookSnapshot before = book.getSnapshot();
+        levels.clear();
+        updates = 0;
+        bbos = 0;
+
+        book.beginUpdate();
+        book.update(Side.BID, 100, 1);
+        book.update(Side.ASK, 101, 0);
+        book.commitUpdate();
+
+        assertTrue(levels.isEmpty());
+        assertEquals(0, updates);
+        assertEquals(0, bbos);
+        assertEquals(before, book.getSnapshot());
+    }
+
+    @Test
+    void changeBelowTheTouchPublishesNoBbo() {
+        ExchangeBook book = book(0);
+        book.update(Side.BID, 100, 1);
+        updates = 0;
+        bbos = 0;
+
+        book.update(Side.BID, 99, 1);
+
+        assertEquals(1, updates);
+        assertEquals(0, bbos);
+    }
+
+    @Test
+    void snapshotReportsOnlyTheDifferenceToTheReplacedBook() {
+        ExchangeBook book = book(0);
+        book.beginUpdate();
+        book.update(Side.BID, 100, 1);
+        book.update(Side.BID, 99, 2);
+        book.update(Side.ASK, 101, 1);
+        book.update(Side.ASK, 102, 1);
+        book.commitUpdate();
+        levels.clear();
+        updates = 0;
+
+        book.beginSnapshot();
+        book.snapshotLevel(Side.BID, 100, 1);
+        book.snapshotLevel(Side.BID, 98, 3);
+        book.snapshotLevel(Side.ASK, 102, 1);
+        book.snapshotLevel(Side.ASK, 101, 2);
+        book.commitSnapshot();
+
+        assertEquals(List.of("BID 98 0->3", "BID 99 2->0", "ASK 101 1->2"), levels);
+        assertEquals(1, updates);
+        assertFalse(book.isLoadingSnapshot());
+        BookSnapshot snapshot = book.getSnapshot();
+        assertEquals(2, snapshot.getBids().size());
+        assertEquals(98, snapshot.getBids().price(1));
+        assertEquals(2, snapshot.getAsks().amount(0));
+    }
+
+    @Test
+    void snapshotIsTrimmedToMaxDepth() {
+        ExchangeBook book = book(2);
+
+        book.beginSnapshot();
+        book.snapshotLevel(Side.BID, 97, 1);
+        book.snapshotLevel(Side.BID, 100, 2);
+        book.snapshotLevel(Side.BID, 98, 3);
+        book.snapshotLevel(Side.BID, 99, 4);
+        book.snapshotLevel(Side.ASK, 101, 0); // removed level in a snapshot
+        book.commitSnapshot();
+
+        assertEquals(List.of("BID 100 0->2", "BID 99 0->4"), levels);
+        assertEquals(1, updates);
+        assertEquals(2, book.getBids().size());
+        assertEquals(0, book.getBids().get(98));
+        assertTrue(book.getAsks().isEmpty());
+    }
+
+    @Test
+    void abortedSnapshotLeavesTheLiveBookAlone() {
+        ExchangeBook book = book(0);
+        book.update(Side.BID, 100, 1);
+        BookSnapshot before = book.getSnapshot();
+        levels.clear();
+        updates = 0;
+
+        book.beginSnapshot();
+        book.snapshotLevel(Side.BID, 99, 5);
+        book.abortSnapshot();
+
+        assertFalse(book.isLoadingSnapshot());
+        assertTrue(levels.isEmpty());
+        assertEquals(0, updates);
+        assertEquals(100, book.getBestBid());
+        assertEquals(0, book.getBids().get(99));
+        assertEquals(before, book.getSnapshot());
+
+        book.beginSnapshot();
+        book.snapshotLevel(Side.BID, 98, 2);
+        book.commitSnapshot(); // the aborted levels are gone
+
+        assertEquals(List.of("BID 98 0->2", "BID 100 1->0"), levels);
+    }
+
+    /**
+     * @return book of an exchange kept at {@code fixedDepth} levels, recording its level changes, updates and
+     * top of book changes
+     */
+    private ExchangeBook book(int fixedDepth) {
+        Exchange exchange = new Exchange(List.of(INSTRUMENT), fixedDepth) {
+            @Override
+            protected void onUpdateMessage(ByteBuffer message) {
+            }
+
+            @Override
+            protected void subscribe() {
+            }
+
+            @Override
+            protected String getUri() {
+                return "ws://localhost";
+            }
+        };
+        ExchangeBook book = exchange.getBook(0);
+        book.onLevelUpdate((source, instrument, side, price, oldAmount, newAmount) ->
+                levels.add(side + " " + price + " " + oldAmount + "->" + newAmount));
+        book.onUpdate(() -> updates++);
+        book.onBbo((bid, bidAmount, ask, askAmount) -> bbos++);
+        return book;
+    }
+}
@@ -0,0 +1,68 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FixedPointTest {
+
+    @Test
+    void parsesPlainDecimals() {
+        assertEquals(4325110000000L, FixedPoint.parse("43251.10000", 8));
+        assertEquals(-500000L, FixedPoint.parse("-0.00500000", 8));
+        assertEquals(12, FixedPoint.parse("12", 0));
+        assertEquals(0, FixedPoint.parse("0.000", 5));
+    }
+
+    @Test
+    void parsesExponentNotation() {
+        assertEquals(1, FixedPoint.parse("1e-8", 8));
+        assertEquals(4325100000L, FixedPoint.parse("4.3251E4", 5));
+        assertEquals(-2500, FixedPoint.parse("-2.5e-5", 8));
+    }
+
+    @Test
+    void roundsDigitsBeyondScaleHalfToEven() {
+        assertEquals(0, FixedPoint.parse("1.234e-9", 8));
+        assertEquals(1, FixedPoint.parse("6e-9", 8));
+        assertEquals(12, FixedPoint.parse("0.125", 2));
+        assertEquals(14, FixedPoint.parse("0.135", 2));
+        assertEquals(13, FixedPoint.parse("0.1251", 2));
+        assertEquals(-12, FixedPoint.parse("-0.125", 2));
+        assertEquals(-13, FixedPoint.parse("-0.126", 2));
+        assertEquals(0, FixedPoint.parse("0.0000000000000000000001", 8));
+    }
+
+    @Test
+    void fallsBackToBigDecimalWhenDigitsOverflow() {
+        assertEquals(123, FixedPoint.parse("1.2345678901234567890123", 2));
+        assertEquals(1000000000000000000L, FixedPoint.parse("1e18", 0));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("1e19", 0));
+    }
+
+    @Test
+    void rejectsText() {
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("abc", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("1e", 2));
+        assertThrows(NumberFormatException.class, () -> FixedPoint.parse("1.2.3", 2));
+    }
+
+    @Test
+    void parsesRangeOfBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("[\"0.05005\",1]".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(5005, FixedPoint.parse(buffer, 2, 9, 5));
+        assertEquals(1, FixedPoint.parseLong(buffer, 11, 12));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void appendsPlainDecimal() {
+        assertEquals("43251.10000", FixedPoint.append(new StringBuilder(), 4325110000L, 5).toString());
+        assertEquals("-0.05", FixedPoint.append(new StringBuilder(), -5, 2).toString());
+        assertEquals("7", FixedPoint.append(new StringBuilder(), 7, 0).toString());
+    }
+}
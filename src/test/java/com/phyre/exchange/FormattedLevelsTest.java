@@ -0,0 +1,109 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FormattedLevelsTest {
+    private static final int LEVELS = 10;
+
+    private PriceLadder ladder;
+    private FormattedLevels levels;
+    private int formatted;
+
+    @BeforeEach
+    void setUp() {
+        ladder = new PriceLadder(Side.BID, 1);
+        levels = new FormattedLevels(LEVELS, 38, (price, amount, target) -> {
+            formatted++;
+            int length = FormattedLevels.appendDigits(target, 0, price);
+            target[length++] = ':';
+            return FormattedLevels.appendDigits(target, length, amount);
+        });
+        for (int i = 0; i < 15; i++) {
+            ladder.set(100 - i, 1 + i);
+        }
+        levels.refresh(ladder);
+        formatted = 0;
+    }
+
+    @Test
+    void formatsNothingWhenNoLevelChanged() {
+        levels.refresh(ladder);
+
+        assertEquals(0, formatted);
+        assertEquals(expectedText(), text());
+    }
+
+    @Test
+    void formatsOnlyTheLevelInsertedAtTheTouch() {
+        ladder.set(101, 7);
+
+        levels.refresh(ladder);
+
+        assertEquals(1, formatted);
+        assertEquals("101:7", text().get(0));
+        assertEquals(expectedText(), text());
+    }
+
+    @Test
+    void formatsOnlyTheLevelShiftedInAfterARemoval() {
+        ladder.set(97, 0);
+
+        levels.refresh(ladder);
+
+        assertEquals(1, formatted);
+        assertEquals("90:11", text().get(LEVELS - 1));
+        assertEquals(expectedText(), text());
+    }
+
+    @Test
+    void formatsOnlyTheChangedAmounts() {
+        ladder.set(99, 20);
+        ladder.set(95, 30);
+
+        levels.refresh(ladder);
+
+        assertEquals(2, formatted);
+        assertEquals(expectedText(), text());
+    }
+
+    @Test
+    void keepsTextAcrossManyRefreshes() {
+        for (int i = 0; i < 20; i++) {
+            ladder.set(101 + i, 1);
+            ladder.set(96 - i, 0);
+            levels.refresh(ladder);
+            assertEquals(expectedText(), text());
+        }
+    }
+
+    @Test
+    void formatsEveryLevelAfterInvalidate() {
+        levels.invalidate();
+
+        levels.refresh(ladder);
+
+        assertEquals(LEVELS, formatted);
+        assertEquals(expectedText(), text());
+    }
+
+    private List<String> text() {
+        List<String> text = new ArrayList<>();
+        for (int i = 0; i < levels.size(); i++) {
+            text.add(new String(levels.text(i), 0, levels.length(i), StandardCharsets.US_ASCII));
+        }
+        return text;
+    }
+
+    private List<String> expectedText() {
+        List<String> text = new ArrayList<>();
+        ladder.forEach(LEVELS, (price, amount) -> text.add(price + ":" + amount));
+        return text;
+    }
+}
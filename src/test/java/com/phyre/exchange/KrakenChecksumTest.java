@@ -0,0 +1,72 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class KrakenChecksumTest {
+    private static final String[] ASKS = {"0.05005", "0.05010", "0.05015", "0.05020", "0.05025",
+            "0.05030", "0.05035", "0.05040", "0.05045", "0.05050"};
+    private static final String[] BIDS = {"0.05000", "0.04995", "0.04990", "0.04980", "0.04975",
+            "0.04970", "0.04965", "0.04960", "0.04955", "0.04950"};
+    private static final String VOLUME = "0.00000500";
+    /**
+     * Checksum of the example book in Kraken's websocket documentation
+     */
+    private static final long DOCUMENTED_CHECKSUM = 974947235L;
+
+    @Test
+    void matchesDocumentedExample() {
+        Instrument instrument = new Instrument("ETH/BTC", 5, 8);
+        KrakenChecksum checksum = new KrakenChecksum(instrument);
+
+        assertEquals(DOCUMENTED_CHECKSUM, checksum.compute(ladder(Side.ASK, instrument, ASKS),
+                ladder(Side.BID, instrument, BIDS)));
+    }
+
+    @Test
+    void matchesDocumentedExampleWithFinerInstrumentScales() {
+        Instrument instrument = new Instrument("ETH/BTC", 9, 12);
+        KrakenChecksum checksum = new KrakenChecksum(instrument);
+        checksum.useDecimals(5, 8);
+
+        assertEquals(DOCUMENTED_CHECKSUM, checksum.compute(ladder(Side.ASK, instrument, ASKS),
+                ladder(Side.BID, instrument, BIDS)));
+    }
+
+    @Test
+    void formatsLevelsAgainWhenDecimalsChange() {
+        Instrument instrument = new Instrument("ETH/BTC", 6, 9);
+        PriceLadder asks = ladder(Side.ASK, instrument, ASKS);
+        PriceLadder bids = ladder(Side.BID, instrument, BIDS);
+        KrakenChecksum checksum = new KrakenChecksum(instrument);
+        long atInstrumentScales = checksum.compute(asks, bids);
+
+        checksum.useDecimals(5, 8);
+
+        assertEquals(DOCUMENTED_CHECKSUM, checksum.compute(asks, bids));
+        assertNotEquals(DOCUMENTED_CHECKSUM, atInstrumentScales);
+    }
+
+    @Test
+    void followsChangedLevels() {
+        Instrument instrument = new Instrument("ETH/BTC", 5, 8);
+        PriceLadder asks = ladder(Side.ASK, instrument, ASKS);
+        PriceLadder bids = ladder(Side.BID, instrument, BIDS);
+        KrakenChecksum checksum = new KrakenChecksum(instrument);
+        checksum.compute(asks, bids);
+
+        asks.set(instrument.parsePrice("0.05005"), instrument.parseSize("0.00000600"));
+
+        assertEquals(2078276397L, checksum.compute(asks, bids));
+    }
+
+    private static PriceLadder ladder(Side side, Instrument instrument, String[] prices) {
+        PriceLadder ladder = new PriceLadder(side, instrument.getTickSize());
+        for (String price : prices) {
+            ladder.set(instrument.parsePrice(price), instrument.parseSize(VOLUME));
+        }
+        return ladder;
+    }
+}
@@ -0,0 +1,167 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KrakenTest {
+    /**
+     * Book of the checksum example in Kraken's websocket documentation, its checksum is 974947235
+     */
+    static final String SNAPSHOT = "[0,{\"as\":["
+            + "[\"0.05005\",\"0.00000500\",\"1582905487.684110\"],[\"0.05010\",\"0.00000500\",\"1582905486.187983\"],"
+            + "[\"0.05015\",\"0.00000500\",\"1582905484.480241\"],[\"0.05020\",\"0.00000500\",\"1582905486.645658\"],"
+            + "[\"0.05025\",\"0.00000500\",\"1582905486.859009\"],[\"0.05030\",\"0.00000500\",\"1582905488.601486\"],"
+            + "[\"0.05035\",\"0.00000500\",\"1582905488.357312\"],[\"0.05040\",\"0.00000500\",\"1582905488.785484\"],"
+            + "[\"0.05045\",\"0.00000500\",\"1582905485.302661\"],[\"0.05050\",\"0.00000500\",\"1582905486.157467\"]"
+            + "],\"bs\":["
+            + "[\"0.05000\",\"0.00000500\",\"1582905487.439814\"],[\"0.04995\",\"0.00000500\",\"1582905485.119396\"],"
+            + "[\"0.04990\",\"0.00000500\",\"1582905486.432052\"],[\"0.04980\",\"0.00000500\",\"1582905480.609351\"],"
+            + "[\"0.04975\",\"0.00000500\",\"1582905476.793880\"],[\"0.04970\",\"0.00000500\",\"1582905486.767461\"],"
+            + "[\"0.04965\",\"0.00000500\",\"1582905481.767528\"],[\"0.04960\",\"0.00000500\",\"1582905487.378907\"],"
+            + "[\"0.04955\",\"0.00000500\",\"1582905483.626664\"],[\"0.04950\",\"0.00000500\",\"1582905488.509872\"]"
+            + "]},\"book-10\",\"ETH/XBT\"]";
+    /**
+     * Raises the best ask volume to 0.000006 with the checksum of the resulting book
+     */
+    static final String UPDATE = "[0,{\"a\":[[\"0.05005\",\"0.00000600\",\"1582905489.123456\"]],"
+            + "\"c\":\"2078276397\"},\"book-10\",\"ETH/XBT\"]";
+    private static final String BAD_UPDATE = UPDATE.replace("2078276397", "1");
+
+    @Test
+    void verifiesChecksumsWithInstrumentScalesAboveKrakenDecimals() {
+        RecordingKraken kraken = new RecordingKraken(new Instrument("ETH/BTC", 8, 10));
+
+        kraken.receive(SNAPSHOT);
+        kraken.receive(UPDATE);
+
+        ExchangeBook book = kraken.getBook("ETH/BTC");
+        assertEquals(0, kraken.getChecksumMismatches());
+        assertTrue(kraken.sent.isEmpty());
+        assertEquals(5005000, book.getBestAsk());
+        assertEquals(60000, book.getBestAskAmount());
+        assertEquals(5000000, book.getBestBid());
+    }
+
+    @Test
+    void dropsBookWhenInstrumentScaleIsBelowKrakenDecimals() {
+        RecordingKraken kraken = new RecordingKraken(new Instrument("ETH/BTC", 4, 8));
+
+        kraken.receive(SNAPSHOT);
+        kraken.receive(UPDATE);
+
+        assertTrue(kraken.isDropped("ETH/BTC"));
+        assertEquals(1, kraken.sent.size());
+        assertTrue(kraken.sent.get(0).contains("\"unsubscribe\""));
+        assertEquals(0, kraken.getBook("ETH/BTC").getBestAsk());
+        assertEquals(0, kraken.getChecksumMismatches());
+    }
+
+    @Test
+    void dropsBookAfterTooManyResubscriptions() {
+        RecordingKraken kraken = new RecordingKraken(new Instrument("ETH/BTC", 5, 8));
+
+        for (int i = 0; i < Kraken.MAX_RESYNCS; i++) {
+            kraken.receive(SNAPSHOT);
+            kraken.receive(BAD_UPDATE);
+            assertFalse(kraken.isDropped("ETH/BTC"));
+        }
+        assertEquals(2 * Kraken.MAX_RESYNCS, kraken.sent.size());
+
+        kraken.receive(SNAPSHOT);
+        kraken.receive(BAD_UPDATE);
+
+        assertTrue(kraken.isDropped("ETH/BTC"));
+        assertEquals(2 * Kraken.MAX_RESYNCS + 1, kraken.sent.size());
+        assertTrue(kraken.sent.get(kraken.sent.size() - 1).contains("\"unsubscribe\""));
+
+        kraken.receive(SNAPSHOT);
+        assertEquals(0, kraken.getBook("ETH/BTC").getBestAsk());
+    }
+
+    @Test
+    void matchingChecksumResetsResubscriptionCount() {
+        RecordingKraken kraken = new RecordingKraken(new Instrument("ETH/BTC", 5, 8));
+
+        for (int i = 0; i < 2 * Kraken.MAX_RESYNCS; i++) {
+            kraken.receive(SNAPSHOT);
+            kraken.receive(BAD_UPDATE);
+            kraken.receive(SNAPSHOT);
+            kraken.receive(UPDATE);
+        }
+
+        assertFalse(kraken.isDropped("ETH/BTC"));
+        assertEquals(2 * Kraken.MAX_RESYNCS, kraken.getChecksumMismatches());
+    }
+
+    @Test
+    void checksPairsOfOneConnectionAgainstTheirOwnDecimals() {
+        Instrument dot = new Instrument("DOT/USD", 5, 8);
+        Instrument ada = new Instrument("ADA/USD", 4, 8);
+        RecordingKraken kraken = new RecordingKraken(Instrument.BTC_USD, dot, ada);
+
+        kraken.receive("[336,{\"as\":[[\"43251.1\",\"0.50000000\",\"1582905487.000001\"],"
+                + "[\"43252.0\",\"1.25000000\",\"1582905487.000002\"],"
+                + "[\"43255.5\",\"0.00100000\",\"1582905487.000003\"]],"
+                + "\"bs\":[[\"43250.9\",\"0.20000000\",\"1582905487.000004\"],"
+                + "[\"43249.0\",\"3.00000000\",\"1582905487.000005\"]]},\"book-10\",\"XBT/USD\"]");
+        kraken.receive("[337,{\"as\":[[\"6.1234\",\"150.00000000\",\"1582905487.000006\"],"
+                + "[\"6.1240\",\"20.50000000\",\"1582905487.000007\"]],"
+                + "\"bs\":[[\"6.1230\",\"75.00000000\",\"1582905487.000008\"],"
+                + "[\"6.1001\",\"1000.00000000\",\"1582905487.000009\"]]},\"book-10\",\"DOT/USD\"]");
+        kraken.receive("[338,{\"as\":[[\"0.452100\",\"500.00000000\",\"1582905487.000010\"]],"
+                + "\"bs\":[[\"0.451900\",\"800.00000000\",\"1582905487.000011\"]]},\"book-10\",\"ADA/USD\"]");
+        kraken.receive("[336,{\"a\":[[\"43251.1\",\"0.40000000\",\"1582905489.000001\"]],"
+                + "\"c\":\"1192020350\"},\"book-10\",\"XBT/USD\"]");
+        kraken.receive("[337,{\"b\":[[\"6.1231\",\"10.00000000\",\"1582905489.000002\"]],"
+                + "\"c\":\"3786040284\"},\"book-10\",\"DOT/USD\"]");
+
+        assertEquals(0, kraken.getChecksumMismatches());
+        assertFalse(kraken.isDropped("BTC/USD"));
+        assertFalse(kraken.isDropped("DOT/USD"));
+        assertTrue(kraken.isDropped("ADA/USD"));
+        assertEquals(1, kraken.sent.size());
+        assertTrue(kraken.sent.get(0).contains("\"unsubscribe\"") && kraken.sent.get(0).contains("ADA/USD"));
+        assertEquals(Instrument.BTC_USD.parseSize("0.4"), kraken.getBook("BTC/USD").getBestAskAmount());
+        assertEquals(dot.parsePrice("6.1231"), kraken.getBook("DOT/USD").getBestBid());
+    }
+
+    @Test
+    void keepsBooksAtTheSubscribedDepth() {
+        Kraken kraken = new Kraken(Instrument.BTC_USD, 25);
+        new OrderBook(List.of(kraken), 5);
+
+        assertTrue(kraken.hasFixedDepth());
+        assertEquals(25, kraken.getMaxDepth());
+        assertEquals(25, kraken.getBook("BTC/USD").getMaxDepth());
+        assertThrows(IllegalArgumentException.class, () -> new Kraken(Instrument.BTC_USD, 20));
+    }
+
+    /**
+     * Kraken fed by hand, messages it sends are recorded instead of going to a socket
+     */
+    static class RecordingKraken extends Kraken {
+        final List<String> sent = new ArrayList<>();
+
+        RecordingKraken(Instrument... instruments) {
+            super(List.of(instruments));
+        }
+
+        void receive(String message) {
+            onUpdateMessage(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        protected void send(String message) {
+            sent.add(message);
+        }
+    }
+}
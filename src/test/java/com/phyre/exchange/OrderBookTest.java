@@ -0,0 +1,115 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class OrderBookTest {
+    private static final String P2_SUBSCRIBED = BitfinexTest.SUBSCRIBED.replace("17082", "17083")
+            .replace("\"P0\"", "\"P2\"");
+
+    @Test
+    void groupedFeedDoesNotCrossConsolidatedBook() {
+        BitfinexTest.RecordingBitfinex raw = new BitfinexTest.RecordingBitfinex();
+        BitfinexTest.RecordingBitfinex grouped = new BitfinexTest.RecordingBitfinex();
+        grouped.setBookMode("BTC/USD", Bitfinex.Precision.P2, Bitfinex.Frequency.F0);
+        OrderBook orderBook = new OrderBook(List.of(grouped, raw));
+        orderBook.startAggregator();
+        try {
+            grouped.receive(P2_SUBSCRIBED);
+            grouped.receive("[17083,[[43200,40,12.5],[43300,35,-9.75]]]");
+            raw.receive(BitfinexTest.SUBSCRIBED);
+            raw.receive("[17082,[[43195,2,0.5],[43196,1,-0.25]]]");
+
+            BookSnapshot snapshot = await(orderBook, "BTC/USD", s -> s.getBids().size() > 0);
+
+            assertEquals(Instrument.BTC_USD.parsePrice("43195"), snapshot.getBestBid());
+            assertEquals(Instrument.BTC_USD.parsePrice("43196"), snapshot.getBestAsk());
+            assertTrue(snapshot.getBestBid() < snapshot.getBestAsk());
+            assertEquals(1, snapshot.getBids().size());
+            assertEquals(Instrument.BTC_USD.parseSize("0.5"), snapshot.getBids().amount(0));
+            assertEquals(1, snapshot.getAsks().size());
+
+            ExchangeBook groupedBook = grouped.getBook("BTC/USD");
+            assertTrue(groupedBook.isGrouped());
+            assertFalse(raw.getBook("BTC/USD").isGrouped());
+            assertEquals(Instrument.BTC_USD.parsePrice("43200"), groupedBook.getBestBid());
+        } finally {
+            orderBook.stop();
+        }
+    }
+
+    @Test
+    void consolidatesGroupedFeedThatIsTheOnlyOneOfItsSymbol() {
+        BitfinexTest.RecordingBitfinex grouped = new BitfinexTest.RecordingBitfinex();
+        grouped.setBookMode("BTC/USD", Bitfinex.Precision.P2, Bitfinex.Frequency.F1);
+        OrderBook orderBook = new OrderBook(List.of(grouped));
+        orderBook.startAggregator();
+        try {
+            grouped.receive(P2_SUBSCRIBED);
+            grouped.receive("[17083,[[43200,40,12.5],[43300,35,-9.75]]]");
+
+            BookSnapshot snapshot = await(orderBook, "BTC/USD", s -> s.getBids().size() > 0);
+
+            assertEquals(Instrument.BTC_USD.parsePrice("43200"), snapshot.getBestBid());
+            assertEquals(Instrument.BTC_USD.parsePrice("43300"), snapshot.getBestAsk());
+        } finally {
+            orderBook.stop();
+        }
+    }
+
+    @Test
+    void mergesLevelsOfUngroupedFeeds() {
+        BitfinexTest.RecordingBitfinex first = new BitfinexTest.RecordingBitfinex();
+        BitfinexTest.RecordingBitfinex second = new BitfinexTest.RecordingBitfinex();
+        OrderBook orderBook = new OrderBook(List.of(first, second));
+        orderBook.startAggregator();
+        try {
+            first.receive(BitfinexTest.SUBSCRIBED);
+            first.receive("[17082,[[43195,2,0.5],[43197,1,-0.25]]]");
+            second.receive(BitfinexTest.SUBSCRIBED);
+            second.receive("[17082,[[43195,1,0.25],[43196,1,-1]]]");
+
+            BookSnapshot snapshot = await(orderBook, "BTC/USD",
+                    s -> s.getBids().size() > 0 && s.getBids().amount(0) == Instrument.BTC_USD.parseSize("0.75")
+                            && s.getAsks().size() == 2);
+
+            assertEquals(Instrument.BTC_USD.parsePrice("43195"), snapshot.getBestBid());
+            assertEquals(Instrument.BTC_USD.parsePrice("43196"), snapshot.getBestAsk());
+        } finally {
+            orderBook.stop();
+        }
+    }
+
+    @Test
+    void rejectsDeltaThatTurnsLevelNegative() {
+        OrderBook orderBook = new OrderBook(List.of(new BitfinexTest.RecordingBitfinex()));
+        long price = Instrument.BTC_USD.parsePrice("43195");
+
+        orderBook.aggregate(0, Side.BID, price, 0, 5);
+        orderBook.aggregate(0, Side.BID, price, 5, 0);
+
+        assertThrows(IllegalStateException.class, () -> orderBook.aggregate(0, Side.BID, price, 5, 0));
+        assertThrows(IllegalStateException.class, () -> orderBook.aggregate(0, Side.ASK, price, 2, 1));
+    }
+
+    static BookSnapshot await(OrderBook orderBook, String symbol, Predicate<BookSnapshot> condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            BookSnapshot snapshot = orderBook.getSnapshot(symbol);
+            if (condition.test(snapshot)) {
+                return snapshot;
+            }
+            Thread.onSpinWait();
+        }
+        return fail("Consolidated book didn't reach the expected state: " + orderBook.getSnapshot(symbol));
+    }
+}
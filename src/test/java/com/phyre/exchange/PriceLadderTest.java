@@ -0,0 +1,210 @@
+package com.phyre.exchange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceLadderTest {
+
+    @Test
+    void recentresAcrossTheWrapPoint() {
+        PriceLadder asks = new PriceLadder(Side.ASK, 1, 8); // window [96, 104) around the first level
+        asks.set(100, 1);
+        asks.set(101, 2);
+        asks.set(102, 3);
+        asks.set(103, 4);
+
+        asks.remove(100);
+        asks.remove(101); // best in the outer quarter, window moves to [98, 106)
+        asks.set(104, 5); // slot 0, held tick 96 before
+        asks.set(105, 6); // slot 1
+
+        assertLevels(asks, 102, 3, 103, 4, 104, 5, 105, 6);
+        assertEquals(102, asks.bestPrice());
+        assertEquals(105, asks.worstPrice());
+
+        asks.remove(102);
+        asks.remove(103); // window moves to [100, 108)
+        assertLevels(asks, 104, 5, 105, 6);
+        assertEquals(104, asks.bestPrice());
+        assertEquals(5, asks.bestQuantity());
+        assertEquals(0, asks.get(96));
+    }
+
+    @Test
+    void recentringMovesLevelsBetweenArrayAndSparseMap() {
+        PriceLadder bids = new PriceLadder(Side.BID, 1, 8);
+        bids.set(100, 1);
+        bids.set(97, 2);
+        bids.set(110, 3); // outside the window, best from the sparse map, window follows it
+
+        assertEquals(110, bids.bestPrice());
+        assertLevels(bids, 110, 3, 100, 1, 97, 2);
+
+        bids.remove(110); // window moves back, 100 and 97 return to the array
+        assertEquals(100, bids.bestPrice());
+        assertEquals(97, bids.worstPrice());
+        assertLevels(bids, 100, 1, 97, 2);
+    }
+
+    @Test
+    void removingBestFallsBackToSparseLevel() {
+        PriceLadder bids = new PriceLadder(Side.BID, 1, 8);
+        bids.set(100, 1);
+        bids.set(90, 2); // outside the window [96, 104)
+
+        bids.remove(100);
+
+        assertEquals(1, bids.size());
+        assertEquals(90, bids.bestPrice());
+        assertEquals(2, bids.bestQuantity());
+        assertEquals(90, bids.worstPrice());
+        assertLevels(bids, 90, 2);
+    }
+
+    @Test
+    void offGridLevelsAreOrderedWithGridLevels() {
+        PriceLadder bids = new PriceLadder(Side.BID, 10, 8);
+        bids.set(1000, 1);
+        bids.set(1005, 2); // off the tick grid, better than the array best
+        bids.set(995, 3);
+
+        assertEquals(1005, bids.bestPrice());
+        assertEquals(995, bids.worstPrice());
+        assertLevels(bids, 1005, 2, 1000, 1, 995, 3);
+
+        bids.remove(1005);
+        assertEquals(1000, bids.bestPrice());
+        assertEquals(1, bids.bestQuantity());
+    }
+
+    @Test
+    void cursorRestartsAfterSideEmptied() {
+        PriceLadder asks = new PriceLadder(Side.ASK, 1, 8);
+        asks.set(100, 1);
+        asks.set(102, 2);
+        asks.remove(100);
+        asks.remove(102);
+
+        assertTrue(asks.isEmpty());
+        assertEquals(0, asks.bestPrice());
+        assertEquals(0, asks.bestQuantity());
+        assertEquals(0, asks.worstPrice());
+        assertLevels(asks);
+
+        asks.set(101, 3); // inside the old window
+        assertEquals(101, asks.bestPrice());
+        assertEquals(101, asks.worstPrice());
+        assertLevels(asks, 101, 3);
+
+        asks.remove(101);
+        asks.set(500, 4); // far away, the window is placed around it
+        asks.set(499, 5);
+        assertEquals(499, asks.bestPrice());
+        assertEquals(500, asks.worstPrice());
+        assertLevels(asks, 499, 5, 500, 4);
+    }
+
+    @Test
+    void truncateRemovesWorstLevelsFirst() {
+        PriceLadder bids = new PriceLadder(Side.BID, 1, 8);
+        for (long price = 100; price <= 105; price++) {
+            bids.set(price, price);
+        }
+        bids.set(50, 7); // sparse
+
+        List<Long> removed = new ArrayList<>();
+        bids.truncate(3, (price, quantity) -> removed.add(price));
+
+        assertEquals(List.of(50L, 100L, 101L, 102L), removed);
+        assertLevels(bids, 105, 105, 104, 104, 103, 103);
+        assertEquals(103, bids.worstPrice());
+    }
+
+    @Test
+    void forEachFailsWhenLadderChangesDuringWalk() {
+        PriceLadder asks = new PriceLadder(Side.ASK, 1, 8);
+        asks.set(100, 1);
+        asks.set(101, 2);
+
+        assertThrows(ConcurrentModificationException.class,
+                () -> asks.forEach((price, quantity) -> asks.remove(101)));
+    }
+
+    @Test
+    void forEachStopsAtMaxLevels() {
+        PriceLadder bids = new PriceLadder(Side.BID, 1, 8);
+        bids.set(100, 1);
+        bids.set(99, 2);
+        bids.set(80, 3);
+
+        List<Long> prices = new ArrayList<>();
+        bids.forEach(2, (price, quantity) -> prices.add(price));
+
+        assertEquals(List.of(100L, 99L), prices);
+    }
+
+    @Test
+    void matchesSortedMapUnderRandomUpdates() {
+        for (Side side : Side.values()) {
+            Random random = new Random(42);
+            PriceLadder ladder = new PriceLadder(side, 5, 16);
+            TreeMap<Long, Long> expected = new TreeMap<>();
+            for (int i = 0; i < 20_000; i++) {
+                long price = 1000 + random.nextInt(60) * 5 + (random.nextInt(10) == 0 ? 2 : 0);
+                long quantity = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100);
+                ladder.set(price, quantity);
+                if (quantity == 0) {
+                    expected.remove(price);
+                } else {
+                    expected.put(price, quantity);
+                }
+                assertMatches(expected, ladder);
+            }
+        }
+    }
+
+    private static void assertMatches(TreeMap<Long, Long> expected, PriceLadder ladder) {
+        NavigableMap<Long, Long> inOrder = ladder.getSide() == Side.BID ? expected.descendingMap() : expected;
+        List<Long> expectedLevels = new ArrayList<>();
+        for (Map.Entry<Long, Long> level : inOrder.entrySet()) {
+            expectedLevels.add(level.getKey());
+            expectedLevels.add(level.getValue());
+        }
+        assertEquals(expectedLevels, levels(ladder));
+        assertEquals(expected.size(), ladder.size());
+        assertEquals(expected.isEmpty() ? 0 : inOrder.firstKey(), ladder.bestPrice());
+        assertEquals(expected.isEmpty() ? 0 : inOrder.lastKey(), ladder.worstPrice());
+    }
+
+    private static void assertLevels(PriceLadder ladder, long... pricesAndQuantities) {
+        List<Long> expected = new ArrayList<>();
+        for (long value : pricesAndQuantities) {
+            expected.add(value);
+        }
+        assertEquals(expected, levels(ladder));
+        assertEquals(pricesAndQuantities.length / 2, ladder.size());
+        for (int i = 0; i < pricesAndQuantities.length; i += 2) {
+            assertEquals(pricesAndQuantities[i + 1], ladder.get(pricesAndQuantities[i]));
+        }
+    }
+
+    private static List<Long> levels(PriceLadder ladder) {
+        List<Long> levels = new ArrayList<>();
+        ladder.forEach((price, quantity) -> {
+            levels.add(price);
+            levels.add(quantity);
+        });
+        return levels;
+    }
+}
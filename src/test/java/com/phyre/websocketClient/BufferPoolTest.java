@@ -0,0 +1,119 @@
+package com.phyre.websocketClient;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+    private final BufferPool pool = new BufferPool(1024, 4096, 1024);
+
+    @Test
+    void acquiresEmptyDirectBuffersRoundedUpToTheirSizeClass() {
+        ByteBuffer read = pool.acquire();
+        ByteBuffer small = pool.acquire(10);
+        ByteBuffer odd = pool.acquire(300);
+
+        assertEquals(1024, read.capacity());
+        assertEquals(256, small.capacity());
+        assertEquals(512, odd.capacity());
+        assertTrue(odd.isDirect());
+        assertEquals(0, odd.position());
+        assertEquals(512, odd.limit());
+    }
+
+    @Test
+    void reusesReleasedBufferOfTheSameSizeClass() {
+        ByteBuffer buffer = pool.acquire(300);
+        buffer.put((byte) 1).limit(10);
+        pool.release(buffer);
+
+        assertNotSame(buffer, pool.acquire(200));
+        ByteBuffer reused = pool.acquire(400);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(512, reused.limit());
+    }
+
+    @Test
+    void allocatesBuffersAboveTheMaxSizeForOneUse() {
+        ByteBuffer large = pool.acquire(5000);
+        pool.release(large);
+
+        assertEquals(5000, large.capacity());
+        assertNotSame(large, pool.acquire(5000));
+        pool.release(large); // not from the pool, nothing to guard
+    }
+
+    @Test
+    void keepsAtMostThePooledBytesPerSizeClass() {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            buffers.add(pool.acquire(256));
+        }
+        buffers.forEach(pool::release);
+
+        Set<ByteBuffer> released = Collections.newSetFromMap(new IdentityHashMap<>());
+        released.addAll(buffers);
+        int reused = 0;
+        for (int i = 0; i < 6; i++) {
+            if (released.contains(pool.acquire(256))) {
+                reused++;
+            }
+        }
+
+        assertEquals(1024 / 256, reused);
+    }
+
+    @Test
+    void keepsAtLeastTwoBuffersOfLargeSizeClasses() {
+        ByteBuffer first = pool.acquire(4096);
+        ByteBuffer second = pool.acquire(4096);
+        ByteBuffer third = pool.acquire(4096);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertSame(second, pool.acquire(4096));
+        assertSame(first, pool.acquire(4096));
+        assertNotSame(third, pool.acquire(4096));
+    }
+
+    @Test
+    void rejectsReleasingABufferTwice() {
+        ByteBuffer buffer = pool.acquire();
+        pool.release(buffer);
+
+        assertThrows(IllegalStateException.class, () -> pool.release(buffer));
+
+        assertSame(buffer, pool.acquire());
+        assertNotSame(buffer, pool.acquire());
+        pool.release(buffer); // in use again after the second acquire
+    }
+
+    @Test
+    void sharesOneReadOnlyViewPerPooledBuffer() {
+        ByteBuffer buffer = pool.acquire();
+        buffer.put(0, (byte) 42);
+
+        ByteBuffer view = pool.view(buffer);
+
+        assertTrue(view.isReadOnly());
+        assertSame(view, pool.view(buffer));
+        assertEquals(42, view.get(0));
+        ByteBuffer foreign = ByteBuffer.allocate(16);
+        assertTrue(pool.view(foreign).isReadOnly());
+        assertNotSame(pool.view(foreign), pool.view(foreign));
+    }
+}
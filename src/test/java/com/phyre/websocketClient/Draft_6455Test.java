@@ -0,0 +1,166 @@
+package com.phyre.websocketClient;
+
+import com.phyre.websocketClient.exceptions.InvalidDataException;
+import com.phyre.websocketClient.framing.Framedata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Draft_6455Test {
+    private static final int TEXT = 1;
+    private static final int CONTINUOUS = 0;
+    private static final int PING = 9;
+
+    private RecordingClient client;
+    private Draft_6455 draft;
+
+    @BeforeEach
+    void setUp() throws URISyntaxException {
+        client = new RecordingClient();
+        draft = new Draft_6455();
+    }
+
+    @Test
+    void decodesFramesFedOneByteAtATime() throws InvalidDataException {
+        String longText = text(200);
+        byte[] bytes = concat(frame(true, TEXT, "hello"), frame(true, TEXT, longText));
+
+        for (byte b : bytes) {
+            draft.decode(client, ByteBuffer.wrap(new byte[]{b}));
+        }
+
+        assertEquals(List.of("hello", longText), client.messages);
+        assertTrue(client.readOnly.stream().allMatch(readOnly -> readOnly));
+    }
+
+    @Test
+    void decodesSixteenBitLengthSplitAcrossReads() throws InvalidDataException {
+        String text = text(300);
+        byte[] bytes = frame(true, TEXT, text);
+
+        feed(bytes, 3, 100); // between the two length bytes and within the payload
+
+        assertEquals(List.of(text), client.messages);
+    }
+
+    @Test
+    void decodesSixtyFourBitLengthSplitAcrossReads() throws InvalidDataException {
+        String text = text(70_000);
+        byte[] bytes = frame(true, TEXT, text);
+
+        feed(bytes, 2, 6, 9, 40_000); // within the eight length bytes, right after them and within the payload
+
+        assertEquals(List.of(text), client.messages);
+    }
+
+    @Test
+    void answersPingBetweenContinuationFrames() throws InvalidDataException {
+        byte[] bytes = concat(frame(false, TEXT, "Hel"), frame(true, PING, "ping"),
+                frame(false, CONTINUOUS, "lo "), frame(true, CONTINUOUS, "world"));
+
+        feed(bytes, 4, 9, 13);
+
+        assertEquals(List.of("Hello world"), client.messages);
+        assertEquals(List.of(true), client.readOnly);
+        assertEquals(List.of("ping"), client.pongs);
+    }
+
+    @Test
+    void handsOutReassembledMessageReadOnly() throws InvalidDataException {
+        String first = text(40_000);
+        byte[] bytes = concat(frame(false, TEXT, first), frame(true, CONTINUOUS, "end"));
+
+        draft.decode(client, ByteBuffer.wrap(bytes));
+
+        assertEquals(List.of(first + "end"), client.messages);
+        assertEquals(List.of(true), client.readOnly);
+    }
+
+    /**
+     * Decodes the bytes in reads that end at the given offsets and one for the rest
+     */
+    private void feed(byte[] bytes, int... splits) throws InvalidDataException {
+        int from = 0;
+        for (int split : splits) {
+            draft.decode(client, ByteBuffer.wrap(Arrays.copyOfRange(bytes, from, split)));
+            from = split;
+        }
+        draft.decode(client, ByteBuffer.wrap(Arrays.copyOfRange(bytes, from, bytes.length)));
+    }
+
+    /**
+     * @return unmasked server frame
+     */
+    private static byte[] frame(boolean fin, int opcode, String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write((fin ? 0x80 : 0) | opcode);
+        if (payload.length <= 125) {
+            frame.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            frame.write(126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length);
+        } else {
+            frame.write(127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                frame.write((int) ((long) payload.length >>> shift));
+            }
+        }
+        frame.writeBytes(payload);
+        return frame.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.writeBytes(part);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Open client without a socket, it records the messages and pongs the decoder hands it
+     */
+    private static class RecordingClient extends WebsocketClient {
+        final List<String> messages = new ArrayList<>();
+        final List<Boolean> readOnly = new ArrayList<>();
+        final List<String> pongs = new ArrayList<>();
+
+        RecordingClient() throws URISyntaxException {
+            super("ws://localhost");
+            onMessageBytes(payload -> {
+                readOnly.add(payload.isReadOnly());
+                messages.add(StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+            });
+        }
+
+        @Override
+        public ReadyState getReadyState() {
+            return ReadyState.OPEN;
+        }
+
+        @Override
+        void sendFrame(Framedata frame) {
+            pongs.add(StandardCharsets.UTF_8.decode(frame.getPayloadData().duplicate()).toString());
+        }
+    }
+}
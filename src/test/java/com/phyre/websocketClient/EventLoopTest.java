@@ -0,0 +1,151 @@
+package com.phyre.websocketClient;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLoopTest {
+    private static final Pattern KEY = Pattern.compile("Sec-WebSocket-Key: *(\\S+)", Pattern.CASE_INSENSITIVE);
+
+    @Test
+    void runsTasksOnTheLoopThreadInOrder() throws InterruptedException {
+        EventLoop eventLoop = new EventLoop("EventLoopTest");
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.execute(() -> order.add(1)); // handed over before the loop runs
+        Thread thread = eventLoop.start();
+        try {
+            assertSame(thread, eventLoop.start());
+            eventLoop.execute(() -> {
+                throw new IllegalStateException("failing task");
+            });
+            eventLoop.execute(() -> {
+                order.add(eventLoop.inEventLoop() ? 2 : -2);
+                done.countDown();
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(1, 2), order);
+            assertTrue(thread.isAlive());
+        } finally {
+            eventLoop.stop();
+        }
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    void drivesSeveralConnectionsFromOneThread() throws Exception {
+        EventLoop eventLoop = new EventLoop("EventLoopTest");
+        Map<String, String> threadByMessage = new ConcurrentHashMap<>();
+        CountDownLatch received = new CountDownLatch(2);
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> serve(server, 2));
+            serverThread.start();
+            String uri = "ws://127.0.0.1:" + server.getLocalPort();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                WebsocketClient client = new WebsocketClient(uri, eventLoop);
+                client.onOpen((request, response) -> {
+                });
+                client.onError(error -> {
+                });
+                client.onClose(reason -> {
+                });
+                client.onMessage(message -> {
+                    threadByMessage.put(message, Thread.currentThread().getName());
+                    received.countDown();
+                });
+                threads.add(client.connect());
+            }
+
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertSame(threads.get(0), threads.get(1));
+            assertEquals(Map.of("hello 0", "EventLoopTest", "hello 1", "EventLoopTest"), threadByMessage);
+            serverThread.join(5000);
+        } finally {
+            eventLoop.stop();
+        }
+    }
+
+    /**
+     * Accepts the connections one after the other, completes their websocket handshake and sends each a text
+     * message with its number, then closes them
+     */
+    private static void serve(ServerSocket server, int connections) {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                Socket socket = server.accept();
+                sockets.add(socket);
+                String request = readRequest(socket.getInputStream());
+                Matcher key = KEY.matcher(request);
+                if (!key.find()) {
+                    throw new IOException("No websocket key in " + request);
+                }
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                        + "Sec-WebSocket-Accept: " + accept(key.group(1)) + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                byte[] payload = ("hello " + i).getBytes(StandardCharsets.UTF_8);
+                out.write(new byte[]{(byte) 0x81, (byte) payload.length});
+                out.write(payload);
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+
+    private static String readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        while (!request.toString(StandardCharsets.US_ASCII).endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed during the handshake");
+            }
+            request.write(b);
+        }
+        return request.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static String accept(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA1");
+            byte[] digest = sha1.digest((key + Constants.GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.phyre.websocketClient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class TlsChannelTest {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private final BufferPool pool = new BufferPool(EventLoop.BUFFER_SIZE, EventLoop.MAX_POOLED_SIZE,
+            EventLoop.MAX_POOLED_BYTES);
+    private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+    private SSLServerSocket server;
+    private Thread serverThread;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLSv1.2");
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore(), PASSWORD);
+        context.init(keyManagers.getKeyManagers(), null, null);
+        server = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0);
+        serverThread = new Thread(this::serve, "TlsChannelTest-server");
+        serverThread.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        server.close();
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+        serverThread.join(5000);
+    }
+
+    @Test
+    void detectsResumedSessionByItsId() throws Exception {
+        SSLContext context = clientContext();
+
+        assertFalse(handshake(context), "first connection runs a full handshake");
+        assertTrue(handshake(context), "second connection resumes the cached session");
+        assertFalse(handshake(clientContext()), "a context without the session runs a full handshake");
+    }
+
+    @Test
+    void decryptsApplicationData() throws Exception {
+        try (SocketChannel channel = connect()) {
+            TlsChannel tls = new TlsChannel(channel, clientContext(), "localhost", server.getLocalPort(), pool);
+            completeHandshake(channel, tls);
+            while (accepted.isEmpty()) {
+                Thread.onSpinWait();
+            }
+            accepted.get(0).getOutputStream().write("hello".getBytes(StandardCharsets.US_ASCII));
+
+            ByteBuffer app = pool.acquire();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (app.position() < 5 && System.nanoTime() < deadline) {
+                tls.read(app);
+            }
+            app.flip();
+
+            assertEquals("hello", StandardCharsets.US_ASCII.decode(app).toString());
+            tls.close();
+        }
+    }
+
+    /**
+     * Connects, completes the TLS handshake and closes the connection again
+     *
+     * @return true if the handshake resumed the session of the previous one
+     */
+    private boolean handshake(SSLContext context) throws IOException {
+        try (SocketChannel channel = connect()) {
+            TlsChannel tls = new TlsChannel(channel, context, "localhost", server.getLocalPort(), pool);
+            completeHandshake(channel, tls);
+            boolean resumed = tls.recordSession();
+            tls.close();
+            return resumed;
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    /**
+     * Drives the handshake like the event loop does, polling the socket instead of selecting it
+     */
+    private void completeHandshake(SocketChannel channel, TlsChannel tls) throws IOException {
+        ByteBuffer app = pool.acquire();
+        tls.beginHandshake();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (tls.isHandshaking() || tls.hasPendingOutput()) {
+            if (System.nanoTime() > deadline) {
+                fail("TLS handshake with the local server didn't finish");
+            }
+            tls.flush();
+            if (tls.read(app) < 0) {
+                fail("Local server closed the connection during the handshake");
+            }
+        }
+        pool.release(app);
+        assertTrue(channel.isConnected());
+    }
+
+    /**
+     * Accepts connections until the server socket is closed, each one is handshaken and then read until the
+     * client goes away
+     */
+    private void serve() {
+        try {
+            while (!server.isClosed()) {
+                SSLSocket socket = (SSLSocket) server.accept();
+                accepted.add(socket);
+                Thread reader = new Thread(() -> drain(socket), "TlsChannelTest-connection");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+            // server socket closed
+        }
+    }
+
+    private static void drain(SSLSocket socket) {
+        try (InputStream in = socket.getInputStream()) {
+            while (in.read() >= 0) {
+                // the handshake runs on the first read
+            }
+        } catch (IOException e) {
+            // connection closed
+        }
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore());
+        SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private static KeyStore keyStore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TlsChannelTest.class.getResourceAsStream("/tls-test.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+        return keyStore;
+    }
+}